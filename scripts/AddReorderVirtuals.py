@@ -7,7 +7,29 @@ output_file = open("../bindings/2.200/GeometryDash-extras-reordered.bro", "w")
 
 virtuals_json = open("virtuals.json", "r")
 
-virtuals = json.load(virtuals_json)
+def expand_virtuals(data):
+    # older dumps are already plain signature arrays
+    if "strings" not in data:
+        return data
+    strings = data["strings"]
+    classes = data["classes"]
+    expanded = {}
+    def expand_table(name, index):
+        key = (name, index)
+        if key not in expanded:
+            table = classes[name][index]
+            if isinstance(table, list):
+                expanded[key] = [strings[i] for i in table]
+            else:
+                result = list(expand_table(table["base"], table["table"]))
+                for slot, i in table["set"]:
+                    result[slot] = strings[i]
+                result += [strings[i] for i in table["add"]]
+                expanded[key] = result
+        return expanded[key]
+    return {name: [expand_table(name, i) for i in range(len(tables))] for name, tables in classes.items()}
+
+virtuals = expand_virtuals(json.load(virtuals_json))
 
 # iterate for every class
 class_match = None
@@ -1,6 +1,10 @@
 // Dump virtual tables from the android version of GD
 // @author Mat
 // @category GeodeSDK
+//
+// Can also be run headless on several programs at once, dumping each one on its own thread:
+// analyzeHeadless <project dir> <project name> -process <any program> -noanalysis -readOnly
+//     -postScript DumpVirtuals.java <output dir> <program path> [<program path>...]
 
 import ghidra.app.script.GhidraScript;
 import ghidra.program.model.mem.*;
@@ -17,217 +21,554 @@ import ghidra.program.flatapi.FlatProgramAPI;
 import ghidra.program.model.address.*;
 import ghidra.program.model.symbol.SymbolType;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+// Writes vtables in a compact format. Every signature is stored once in a string 
+// table, and a vtable that extends another one (usually the same vtable of the 
+// base class) only stores the slots it overrides and the slots it appends:
+// {
+//     "strings": ["copyWithZone(cocos2d::CCZone*)", ...],
+//     "classes": {
+//         "cocos2d::CCLayer": [[0, 1, 2, ...], ...],
+//         "GJDropDownLayer": [{"base": "cocos2d::CCLayer", "table": 0, "set": [[1, 201], [2, 201]], "add": [202, 203]}, ...]
+//     }
+// }
+// Use loadVirtuals from virtuals.mjs to read it
+class VtableEncoder {
+    record TableRef(String name, int index) {}
+
+    ArrayList<String> strings = new ArrayList<>();
+    HashMap<String, Integer> stringIds = new HashMap<>();
+    TreeMap<String, ArrayList<int[]>> tables = new TreeMap<>();
+    HashMap<TableRef, TableRef> bases = new HashMap<>();
+
+    VtableEncoder(Map<String, ? extends List<? extends List<String>>> classes, Map<String, String> primaryBases) {
+        // Sorted so the output is the same every time
+        for (var name : new TreeMap<>(classes).keySet()) {
+            var encoded = new ArrayList<int[]>();
+            for (var table : classes.get(name)) {
+                encoded.add(table.stream().mapToInt(this::intern).toArray());
+            }
+            tables.put(name, encoded);
+        }
 
-public class DumpVirtuals extends GhidraScript {
-    int PTR_SIZE;
-
-    SymbolTable table;
-    Listing listing;
+        // Prefer the actual base class when we know it
+        for (var entry : tables.entrySet()) {
+            var base = primaryBases.get(entry.getKey());
+            if (base == null || !tables.containsKey(base)) continue;
+            for (var i = 0; i < Math.min(entry.getValue().size(), tables.get(base).size()); i += 1) {
+                tryUseBase(new TableRef(entry.getKey(), i), new TableRef(base, i));
+            }
+        }
 
-    Symbol getChildOfName(Symbol parent, String name) {
-        for (var child : table.getChildren(parent)) {
-            if (child.getName().equals(name))
-                return child;
+        // Otherwise guess by looking for the same table of another class that 
+        // has the most slots in common, trying the longest tables first
+        var candidates = new ArrayList<TableRef>();
+        for (var entry : tables.entrySet()) {
+            for (var i = 0; i < entry.getValue().size(); i += 1) {
+                candidates.add(new TableRef(entry.getKey(), i));
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(get(b).length, get(a).length));
+        for (var self : candidates) {
+            if (bases.containsKey(self)) continue;
+            var table = get(self);
+            TableRef best = null;
+            var bestMatches = 0;
+            for (var other : candidates) {
+                var otherTable = get(other);
+                if (otherTable.length <= bestMatches) break;
+                if (other.index() != self.index() || other.name().equals(self.name())) continue;
+                if (otherTable.length > table.length) continue;
+                var matches = countMatches(table, otherTable);
+                if (matches > bestMatches) {
+                    best = other;
+                    bestMatches = matches;
+                }
+            }
+            if (best != null) {
+                tryUseBase(self, best);
+            }
         }
-        return null;
     }
 
-    Data createPtrAt(Address addr) throws Exception {
-        Data data = listing.getDataAt(addr);
-        if (!data.isDefined())
-            data = listing.createData(addr, new PointerDataType());
-        return data;
+    int intern(String signature) {
+        return stringIds.computeIfAbsent(signature, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
     }
 
-    Address addrAtData(Data data) throws Exception {
-        return (Address)data.getValue();
+    int[] get(TableRef ref) {
+        return tables.get(ref.name()).get(ref.index());
     }
 
-    Address removeThumbOffset(Address addr) {
-        // thumb addresses are stored as actual addr + 1
-        if (addr.getOffset() % 2 == 1) {
-            addr = addr.subtract(1);
+    static int countMatches(int[] table, int[] base) {
+        var matches = 0;
+        for (var i = 0; i < base.length; i += 1) {
+            if (table[i] == base[i]) matches += 1;
         }
-        return addr;
+        return matches;
     }
 
-    boolean isTypeinfo(Address addr) {
-        var com = listing.getComment(CodeUnit.PLATE_COMMENT, addr);
-        if (com == null) return false;
-        return com.contains("typeinfo");
-        // this.currentProgram.getSymbolTable().getPrimarySymbolAt(addr).getName().equals("typeinfo");
+    void tryUseBase(TableRef self, TableRef base) {
+        var table = get(self);
+        var baseTable = get(base);
+        if (baseTable.length > table.length) return;
+        // Only worth it if the overrides and appended slots take less space than the whole table
+        var overrides = baseTable.length - countMatches(table, baseTable);
+        if (overrides * 2 + table.length - baseTable.length >= table.length) return;
+        // Tables can't be expanded if they end up referring to themselves
+        for (var ref = base; ref != null; ref = bases.get(ref)) {
+            if (ref.equals(self)) return;
+        }
+        bases.put(self, base);
     }
 
-    boolean isStartOfVtable(Address addr) throws Exception {
-        if (hasVtableComment(addr)) return true;
+    void write(PrintWriter writer) {
+        writer.write("{\"strings\":[");
+        for (var i = 0; i < strings.size(); i += 1) {
+            if (i != 0) writer.write(",");
+            writer.write("\"" + strings.get(i) + "\"");
+        }
+        writer.write("],\"classes\":{");
+        boolean first1 = true;
+        for (var entry : tables.entrySet()) {
+            if (!first1) writer.write(",");
+            writer.write("\"" + entry.getKey() + "\":[");
+            for (var i = 0; i < entry.getValue().size(); i += 1) {
+                if (i != 0) writer.write(",");
+                var self = new TableRef(entry.getKey(), i);
+                var table = entry.getValue().get(i);
+                var base = bases.get(self);
+                if (base == null) {
+                    writeIds(writer, table, 0);
+                    continue;
+                }
+                var baseTable = get(base);
+                writer.write("{\"base\":\"" + base.name() + "\",\"table\":" + base.index());
+                writer.write(",\"set\":[");
+                boolean first2 = true;
+                for (var j = 0; j < baseTable.length; j += 1) {
+                    if (table[j] == baseTable[j]) continue;
+                    if (!first2) writer.write(",");
+                    writer.write("[" + j + "," + table[j] + "]");
+                    first2 = false;
+                }
+                writer.write("],\"add\":");
+                writeIds(writer, table, baseTable.length);
+                writer.write("}");
+            }
+            writer.write("]");
+            first1 = false;
+        }
+        writer.write("}}");
+    }
 
-        // on itanium, vtable starts with 0 or a negative number,
-        // and then a pointer to type info.
+    static void writeIds(PrintWriter writer, int[] ids, int from) {
+        writer.write("[");
+        for (var i = from; i < ids.length; i += 1) {
+            if (i != from) writer.write(",");
+            writer.write(Integer.toString(ids[i]));
+        }
+        writer.write("]");
+    }
+}
 
-        // get the value of the pointer as an int, and see if its non positive
-        var offset = currentProgram.getMemory().getInt(addr);
-        var result = offset <= 0;
-        // the ptr after must be of a typeinfo
-        result = result && isTypeinfo(readPtrAt(addr.add(PTR_SIZE)));
+public class DumpVirtuals extends GhidraScript {
+    // Strips the class name (and thunk prefix) from demangled signatures
+    static final Pattern SCOPE_PREFIX = Pattern.compile("^(non-virtual thunk to )?(\\w+::)+(?=~?\\w+\\()");
+
+    // All of the state for dumping a single program, so multiple programs can 
+    // be dumped at the same time
+    class ProgramDump implements Callable<ProgramDump> {
+        final Program program;
+        final String name;
+        int PTR_SIZE;
+
+        SymbolTable table;
+        Listing listing;
+
+        HashMap<String, ArrayList<ArrayList<String>>> classes = new HashMap<>();
+        HashMap<String, String> primaryBases = new HashMap<>();
+
+        ProgramDump(Program program, String name) {
+            this.program = program;
+            this.name = name;
+            PTR_SIZE = program.getDefaultPointerSize();
+            table = program.getSymbolTable();
+            listing = program.getListing();
+        }
 
-        return result;
-    }
+        Address toAddr(long offset) {
+            return program.getAddressFactory().getDefaultAddressSpace().getAddress(offset);
+        }
+
+        Symbol getChildOfName(Symbol parent, String name) {
+            for (var child : table.getChildren(parent)) {
+                if (child.getName().equals(name))
+                    return child;
+            }
+            return null;
+        }
 
-    Address readPtrAt(Address addr) throws Exception {
-        var unkData = listing.getDataAt(addr);
-        if (PTR_SIZE == 4) {
-            return toAddr(unkData.getInt(0));
-        } else {
-            return toAddr(unkData.getLong(0));
+        Data createPtrAt(Address addr) throws Exception {
+            Data data = listing.getDataAt(addr);
+            if (!data.isDefined())
+                data = listing.createData(addr, new PointerDataType());
+            return data;
         }
-    }
 
-    boolean hasVtableComment(Address addr) {
-        var com = listing.getComment(CodeUnit.PLATE_COMMENT, addr);
-        if (com == null) return false;
-        return com.contains("vtable");
-    }
-	
-	HashMap<String, ArrayList<ArrayList<String>>> classes = new HashMap<>();
-	
-	void processNamespace(Namespace cl) {
-		var name = cl.getName(true);
-
-		if (name.contains("switch")) return;
-		if (name.contains("llvm")) return;
-		if (name.contains("tinyxml2")) return;
-		if (name.contains("<")) return;
-		if (name.contains("__")) return;
-		if (name.contains("fmt")) return;
-		if (name.contains("std::")) return;
-		if (name.contains("pugi")) return;
-		// i think theyre correct already
-		if (name.contains("cocos2d::")) return;
-
-		// theres only one vtable on android,
-		var vtable = getChildOfName(cl.getSymbol(), "vtable");
-		// and if there is none then we dont care
-		if (vtable == null) return;
-
-        // if (!name.equals("GJBaseGameLayer")) return;
-
-		println("Dumping " + name);
-
-		ArrayList<ArrayList<String>> bases = new ArrayList<>();
-		classes.put(name, bases);
-
-		var vtableAddr = vtable.getProgramLocation().getAddress();
-		try {
-			var curAddr = vtableAddr;
-			while (isStartOfVtable(curAddr) && !this.monitor.isCancelled()) {
-				ArrayList<String> virtuals = new ArrayList<>();
-				curAddr = curAddr.add(PTR_SIZE * 2);
-				while (!this.monitor.isCancelled()) {
-					if (isStartOfVtable(curAddr)) break;
-					// idk what this is for
-					// if (listing.getComment(CodeUnit.PLATE_COMMENT, curAddr) != null) break;
-
-					// ok, we're probably at the functions now!
-
-					var functionAddr = removeThumbOffset(readPtrAt(curAddr));
-
-                    // some vtables have nullptrs in them, like GJBaseGameLayer
-                    // since they are pure virtual or something
-                    if (functionAddr.getUnsignedOffset() == 0) {
+        Address addrAtData(Data data) throws Exception {
+            return (Address)data.getValue();
+        }
+
+        Address removeThumbOffset(Address addr) {
+            // thumb addresses are stored as actual addr + 1
+            if (addr.getOffset() % 2 == 1) {
+                addr = addr.subtract(1);
+            }
+            return addr;
+        }
+
+        boolean isTypeinfo(Address addr) {
+            var com = listing.getComment(CodeUnit.PLATE_COMMENT, addr);
+            if (com == null) return false;
+            return com.contains("typeinfo");
+            // this.currentProgram.getSymbolTable().getPrimarySymbolAt(addr).getName().equals("typeinfo");
+        }
+
+        boolean isStartOfVtable(Address addr) throws Exception {
+            if (hasVtableComment(addr)) return true;
+
+            // on itanium, vtable starts with 0 or a negative number,
+            // and then a pointer to type info.
+
+            // get the value of the pointer as an int, and see if its non positive
+            var offset = program.getMemory().getInt(addr);
+            var result = offset <= 0;
+            // the ptr after must be of a typeinfo
+            result = result && isTypeinfo(readPtrAt(addr.add(PTR_SIZE)));
+
+            return result;
+        }
+
+        Address readPtrAt(Address addr) throws Exception {
+            var unkData = listing.getDataAt(addr);
+            if (PTR_SIZE == 4) {
+                return toAddr(unkData.getInt(0));
+            } else {
+                return toAddr(unkData.getLong(0));
+            }
+        }
+
+        boolean isClassTypeinfoKind(Symbol symbol, String kind) {
+            return symbol != null && symbol.getName(true).contains(kind);
+        }
+
+        // Follows the typeinfo of a vtable to the class's primary base, or null 
+        // if it has no base or the typeinfo isn't one we understand
+        String findPrimaryBase(Address vtableAddr) {
+            try {
+                var typeinfo = readPtrAt(vtableAddr.add(PTR_SIZE));
+                // The typeinfo's own vtable (or the import of it) tells what kind it is
+                var kindAddr = readPtrAt(typeinfo);
+                var kind = table.getPrimarySymbol(kindAddr);
+                var kindVtable = table.getPrimarySymbol(kindAddr.subtract(PTR_SIZE * 2));
+                Address baseAddr;
+                if (isClassTypeinfoKind(kind, "__si_class_type_info") || isClassTypeinfoKind(kindVtable, "__si_class_type_info")) {
+                    baseAddr = readPtrAt(typeinfo.add(PTR_SIZE * 2));
+                } else if (isClassTypeinfoKind(kind, "__vmi_class_type_info") || isClassTypeinfoKind(kindVtable, "__vmi_class_type_info")) {
+                    // skip the flags and base count, then the first base is the primary one
+                    baseAddr = readPtrAt(typeinfo.add(PTR_SIZE * 2 + 8));
+                } else {
+                    return null;
+                }
+                var base = table.getPrimarySymbol(baseAddr);
+                if (base == null || !base.getName().equals("typeinfo")) return null;
+                return base.getParentNamespace().getName(true);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        boolean hasVtableComment(Address addr) {
+            var com = listing.getComment(CodeUnit.PLATE_COMMENT, addr);
+            if (com == null) return false;
+            return com.contains("vtable");
+        }
+
+        void processNamespace(Namespace cl) {
+            var name = cl.getName(true);
+
+            if (name.contains("switch")) return;
+            if (name.contains("llvm")) return;
+            if (name.contains("tinyxml2")) return;
+            if (name.contains("<")) return;
+            if (name.contains("__")) return;
+            if (name.contains("fmt")) return;
+            if (name.contains("std::")) return;
+            if (name.contains("pugi")) return;
+            // i think theyre correct already
+            if (name.contains("cocos2d::")) return;
+
+            // theres only one vtable on android,
+            var vtable = getChildOfName(cl.getSymbol(), "vtable");
+            // and if there is none then we dont care
+            if (vtable == null) return;
+
+            // if (!name.equals("GJBaseGameLayer")) return;
+
+            println("Dumping " + name + " from " + this.name);
+
+            ArrayList<ArrayList<String>> bases = new ArrayList<>();
+            classes.put(name, bases);
+
+            var vtableAddr = vtable.getProgramLocation().getAddress();
+            var base = findPrimaryBase(vtableAddr);
+            if (base != null) {
+                primaryBases.put(name, base);
+            }
+            try {
+                var curAddr = vtableAddr;
+                while (isStartOfVtable(curAddr) && !monitor.isCancelled()) {
+                    ArrayList<String> virtuals = new ArrayList<>();
+                    curAddr = curAddr.add(PTR_SIZE * 2);
+                    while (!monitor.isCancelled()) {
+                        if (isStartOfVtable(curAddr)) break;
+                        // idk what this is for
+                        // if (listing.getComment(CodeUnit.PLATE_COMMENT, curAddr) != null) break;
+
+                        // ok, we're probably at the functions now!
+
+                        var functionAddr = removeThumbOffset(readPtrAt(curAddr));
+
+                        // some vtables have nullptrs in them, like GJBaseGameLayer
+                        // since they are pure virtual or something
+                        if (functionAddr.getUnsignedOffset() == 0) {
+                            curAddr = curAddr.add(PTR_SIZE);
+                            continue;
+                        }
+
+                        var function = listing.getFunctionAt(functionAddr);
+                        
+                        if (function == null) break;
+
+                        if (function.getName().contains("pure_virtual")) {
+                            virtuals.add("pure_virtual_" + curAddr.toString() + "()");
+                        } else {
+                            var comment = listing.getComment(CodeUnit.PLATE_COMMENT, functionAddr);
+                            var funcSig = SCOPE_PREFIX.matcher(comment).replaceAll("");
+                            virtuals.add(funcSig);
+                        }
+                        
                         curAddr = curAddr.add(PTR_SIZE);
-                        continue;
                     }
 
-					var function = listing.getFunctionAt(functionAddr);
-					
-					if (function == null) break;
-
-					if (function.getName().contains("pure_virtual")) {
-						virtuals.add("pure_virtual_" + curAddr.toString() + "()");
-					} else {
-						var comment = listing.getComment(CodeUnit.PLATE_COMMENT, functionAddr);
-						var funcSig = comment.replaceAll("^(non-virtual thunk to )?(\\w+::)+(?=~?\\w+\\()", "");
-						virtuals.add(funcSig);
-					}
-					
-					curAddr = curAddr.add(PTR_SIZE);
-				}
-
-				bases.add(virtuals);
-
-				// we've reached another class's vtable! abort!!
-				if (hasVtableComment(curAddr) || hasVtableComment(curAddr.add(PTR_SIZE))) break;
-				// risky but whatever
-				// if (readPtrAt(curAddr).getOffset() == 0) return;
-			}
-		} catch (Exception e) {}
-	}
+                    bases.add(virtuals);
 
-    public void run() throws Exception {
-        println("-------- STARTING -------");
-        PTR_SIZE = currentProgram.getDefaultPointerSize();
-
-        table = currentProgram.getSymbolTable();
-        listing = currentProgram.getListing();
-
-        table.getChildren(currentProgram.getGlobalNamespace().getSymbol()).forEach((sy) -> {
-            if (!sy.getSymbolType().equals(ghidra.program.model.symbol.SymbolType.CLASS) &&
-            !sy.getSymbolType().equals(ghidra.program.model.symbol.SymbolType.NAMESPACE)) return;
-            // var cl = (Namespace)sy;
-            // ghidra is so stupid istg
-            var cl = table.getNamespace(sy.getName(), currentProgram.getGlobalNamespace());
-			
-			processNamespace(cl);
-        });
-		
-        if (false) {
-            var cocosNs = table.getNamespace("cocos2d", currentProgram.getGlobalNamespace());
-            table.getChildren(cocosNs.getSymbol()).forEach((sy) -> {
+                    // we've reached another class's vtable! abort!!
+                    if (hasVtableComment(curAddr) || hasVtableComment(curAddr.add(PTR_SIZE))) break;
+                    // risky but whatever
+                    // if (readPtrAt(curAddr).getOffset() == 0) return;
+                }
+            } catch (Exception e) {}
+        }
+
+        public ProgramDump call() {
+            table.getChildren(program.getGlobalNamespace().getSymbol()).forEach((sy) -> {
                 if (!sy.getSymbolType().equals(ghidra.program.model.symbol.SymbolType.CLASS) &&
                 !sy.getSymbolType().equals(ghidra.program.model.symbol.SymbolType.NAMESPACE)) return;
-                var cl = table.getNamespace(sy.getName(), cocosNs);
-                
+                // var cl = (Namespace)sy;
+                // ghidra is so stupid istg
+                var cl = table.getNamespace(sy.getName(), program.getGlobalNamespace());
+
                 processNamespace(cl);
             });
+
+            if (false) {
+                var cocosNs = table.getNamespace("cocos2d", program.getGlobalNamespace());
+                table.getChildren(cocosNs.getSymbol()).forEach((sy) -> {
+                    if (!sy.getSymbolType().equals(ghidra.program.model.symbol.SymbolType.CLASS) &&
+                    !sy.getSymbolType().equals(ghidra.program.model.symbol.SymbolType.NAMESPACE)) return;
+                    var cl = table.getNamespace(sy.getName(), cocosNs);
+                    
+                    processNamespace(cl);
+                });
+            }
+            return this;
         }
+    }
+
+    public void run() throws Exception {
+        println("-------- STARTING -------");
+
+        var args = getScriptArgs();
+        if (isRunningHeadless() && args.length > 0) {
+            runBatch(args);
+            return;
+        }
+
+        var dump = new ProgramDump(currentProgram, currentProgram.getName()).call();
 
         println("Generating json..");
 
         var file = askFile("Save json output", "Save");
-        if (file == null || file.exists()) return;
+        if (file == null) return;
+        if (file.exists() && !askYesNo("Overwrite file", file.getName() + " already exists - overwrite it?")) return;
 
-        var writer = new PrintWriter(file, "UTF-8");
+        writeJson(file, dump);
+    }
+
+    void runBatch(String[] args) throws Exception {
+        var outputDir = new File(args[0]);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new Error("Unable to create output directory " + outputDir);
+        }
 
+        // Opening programs isn't thread-safe, so do that first and only 
+        // run the dumps themselves in parallel
+        var dumps = new ArrayList<ProgramDump>();
+        var opened = new ArrayList<Program>();
+        try {
+            for (var path : Arrays.asList(args).subList(1, args.length)) {
+                var domainFile = state.getProject().getProjectData().getFile(path);
+                if (domainFile == null) {
+                    throw new Error("No program at " + path + " in the project");
+                }
+                var program = (Program)domainFile.getDomainObject(this, false, false, monitor);
+                opened.add(program);
+                // The same binary name is usually used for every architecture, 
+                // so name outputs after the whole project path
+                dumps.add(new ProgramDump(program, path.replaceFirst("^/", "").replace('/', '_')));
+            }
+            if (dumps.isEmpty()) {
+                dumps.add(new ProgramDump(currentProgram, currentProgram.getName()));
+            }
+
+            var executor = Executors.newFixedThreadPool(dumps.size());
+            try {
+                for (var future : executor.invokeAll(dumps)) {
+                    var dump = future.get();
+                    writeJson(new File(outputDir, dump.name + ".json"), dump);
+                    println("Dumped " + dump.classes.size() + " classes from " + dump.name);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            for (var program : opened) {
+                program.release(this);
+            }
+        }
+
+        if (dumps.size() > 1) {
+            writeMerged(new File(outputDir, "merged.json"), dumps);
+        }
+    }
+
+    // Every class from every program in one file. Classes whose vtables are the 
+    // same in every program are stored once under "*", otherwise each program's 
+    // vtables are listed separately (null if the program doesn't have that class)
+    void writeMerged(File file, List<ProgramDump> dumps) throws Exception {
+        var names = new TreeMap<String, Boolean>();
+        for (var dump : dumps) {
+            for (var name : dump.classes.keySet()) {
+                names.put(name, true);
+            }
+        }
+        var mismatches = 0;
+        var writer = new PrintWriter(file, "UTF-8");
         try {
-            // writing json output manually..
             writer.write("{");
             boolean first1 = true;
-            for (var name : classes.keySet()) {
+            for (var name : names.keySet()) {
                 if (!first1) writer.write(",");
-                writer.write("\"" + name + "\":[");
-                boolean first2 = true;
-                for (var table : classes.get(name)) {
-                    if (!first2) writer.write(",");
-                    writer.write("[");
-                    boolean first3 = true;
-                    for (var func : table) {
-                        if (!first3) writer.write(",");
-                        writer.write("\"" + func + "\"");
-                        first3 = false;
+                writer.write("\"" + name + "\":{");
+                var tables = dumps.get(0).classes.get(name);
+                var comparable = withoutPureVirtualAddrs(tables);
+                var agree = dumps.stream().allMatch(d -> Objects.equals(withoutPureVirtualAddrs(d.classes.get(name)), comparable));
+                if (agree) {
+                    writer.write("\"*\":");
+                    writeTables(writer, tables);
+                } else {
+                    mismatches += 1;
+                    boolean first2 = true;
+                    for (var dump : dumps) {
+                        if (!first2) writer.write(",");
+                        writer.write("\"" + dump.name + "\":");
+                        writeTables(writer, dump.classes.get(name));
+                        first2 = false;
                     }
-                    writer.write("]");
-                    first2 = false;
                 }
-                writer.write("]");
+                writer.write("}");
                 first1 = false;
             }
             writer.write("}");
         } finally {
             writer.close();
         }
+        println("Merged " + names.size() + " classes, " + mismatches + " differ between programs");
+    }
+
+    // Pure virtual slots are named after their own address, which is never the 
+    // same between programs, so it's left out when comparing them. The name 
+    // still has it when written out since generate.mjs uses it to tell the 
+    // slots apart
+    static ArrayList<ArrayList<String>> withoutPureVirtualAddrs(ArrayList<ArrayList<String>> tables) {
+        if (tables == null) {
+            return null;
+        }
+        var result = new ArrayList<ArrayList<String>>();
+        for (var table : tables) {
+            var stripped = new ArrayList<String>();
+            for (var function : table) {
+                stripped.add(function.startsWith("pure_virtual_") ? "pure_virtual()" : function);
+            }
+            result.add(stripped);
+        }
+        return result;
+    }
+
+    void writeJson(File file, ProgramDump dump) throws Exception {
+        var writer = new PrintWriter(file, "UTF-8");
+        try {
+            new VtableEncoder(dump.classes, dump.primaryBases).write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    void writeTables(PrintWriter writer, ArrayList<ArrayList<String>> tables) {
+        if (tables == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write("[");
+        boolean first2 = true;
+        for (var table : tables) {
+            if (!first2) writer.write(",");
+            writer.write("[");
+            boolean first3 = true;
+            for (var func : table) {
+                if (!first3) writer.write(",");
+                writer.write("\"" + func + "\"");
+                first3 = false;
+            }
+            writer.write("]");
+            first2 = false;
+        }
+        writer.write("]");
     }
 }
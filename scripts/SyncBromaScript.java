@@ -2,38 +2,74 @@
 // @author HJfod
 // @category GeodeSDK
 
+import broma.ItaniumMangler;
+import broma.Regexes;
+import broma.TypeExpr;
+import broma.TypeName;
+import broma.TypeParser;
+
 import ghidra.app.script.GhidraScript;
 import ghidra.features.base.values.GhidraValuesMap;
+import ghidra.program.model.address.Address;
 import ghidra.program.model.data.AbstractFloatDataType;
+import ghidra.program.model.data.BooleanDataType;
 import ghidra.program.model.data.CategoryPath;
+import ghidra.program.model.data.CharDataType;
 import ghidra.program.model.data.DataType;
 import ghidra.program.model.data.DataTypeConflictHandler;
+import ghidra.program.model.data.DataTypeManager;
 import ghidra.program.model.data.DataTypePath;
 import ghidra.program.model.data.DoubleDataType;
 import ghidra.program.model.data.EnumDataType;
+import ghidra.program.model.data.FileDataTypeManager;
 import ghidra.program.model.data.FloatDataType;
 import ghidra.program.model.data.IntegerDataType;
+import ghidra.program.model.data.LongDataType;
+import ghidra.program.model.data.LongLongDataType;
 import ghidra.program.model.data.PointerDataType;
+import ghidra.program.model.data.ShortDataType;
+import ghidra.program.model.data.SignedCharDataType;
 import ghidra.program.model.data.StructureDataType;
+import ghidra.program.model.data.UnsignedCharDataType;
+import ghidra.program.model.data.UnsignedIntegerDataType;
+import ghidra.program.model.data.UnsignedLongDataType;
+import ghidra.program.model.data.UnsignedLongLongDataType;
+import ghidra.program.model.data.UnsignedShortDataType;
+import ghidra.program.model.data.VoidDataType;
+import ghidra.program.model.lang.Register;
 import ghidra.program.model.listing.AutoParameterImpl;
 import ghidra.program.model.listing.Function;
 import ghidra.program.model.listing.GhidraClass;
 import ghidra.program.model.listing.ParameterImpl;
+import ghidra.program.model.listing.Program;
 import ghidra.program.model.listing.ReturnParameterImpl;
 import ghidra.program.model.listing.Variable;
 import ghidra.program.model.listing.VariableStorage;
 import ghidra.program.model.listing.Function.FunctionUpdateType;
+import ghidra.program.model.mem.Memory;
+import ghidra.program.model.mem.MemoryAccessException;
 import ghidra.program.model.symbol.Namespace;
 import ghidra.program.model.symbol.SourceType;
+import ghidra.program.model.symbol.SymbolTable;
 
 import java.io.File;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.text.MessageFormat;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 // https://www.baeldung.com/java-lambda-exceptions
 @FunctionalInterface
@@ -41,92 +77,785 @@ interface ThrowingConsumer<T, E extends Exception> {
     void accept(T t) throws E;
 }
 
-class Regexes {
-    static final Pattern GRAB_NAMED_GROUP = Pattern.compile("(?<=\\(\\?)<\\w+>", 0);
-    
-    static final<T> String removeNamedGroups(T pattern) {
-        return GRAB_NAMED_GROUP.matcher(pattern.toString()).replaceAll(":");
+enum CConv {
+    CDECL,
+    THISCALL,
+    MEMBERCALL,
+    FASTCALL,
+    OPTCALL,
+}
+
+enum ParamKind {
+    FLOAT,
+    DOUBLE,
+    // Some other floating-point type that we don't know a register for
+    OTHER_FLOAT,
+    STRUCT,
+    OTHER;
+
+    static ParamKind of(DataType type) {
+        if (type instanceof FloatDataType) return FLOAT;
+        if (type instanceof DoubleDataType) return DOUBLE;
+        if (type instanceof AbstractFloatDataType) return OTHER_FLOAT;
+        if (type instanceof StructureDataType) return STRUCT;
+        return OTHER;
     }
-    static final<T> String formatRegex(String fmt, T... args) {
-        return MessageFormat.format(
-            fmt,
-            Arrays.asList(args).stream().map(p -> removeNamedGroups(p)).toArray()
-        );
+}
+
+record ParamSlot(ParamKind kind, int length) {}
+
+// The parts of a signature that decide where its parameters are stored; 
+// functions with the same shape can share the same storage layout
+record SignatureShape(CConv conv, List<ParamSlot> slots) {
+    static SignatureShape of(CConv conv, List<Variable> params) {
+        var slots = new ParamSlot[params.size()];
+        for (var i = 0; i < slots.length; i += 1) {
+            final var type = params.get(i).getDataType();
+            slots[i] = new ParamSlot(ParamKind.of(type), type.getLength());
+        }
+        return new SignatureShape(conv, List.of(slots));
     }
-    static final Pattern generateRecursiveRegex(String format, int depth, String basecase, int flags) {
-        var result = MessageFormat.format(format, basecase);
-        while (depth > 0) {
-            result = MessageFormat.format(format, removeNamedGroups(result));
-            depth -= 1;
+}
+
+// A vtable found through its Complete Object Locator. `offset` is where the 
+// subobject using the vtable is in the class, so it's 0 for the primary vtable
+record MsvcVtable(String className, int offset, long address, long[] slots) {}
+
+// An entry in a class's RTTI base class array. The class itself is always the 
+// first entry, followed by its bases depth-first
+record RttiBase(String name, int containedBases, int offset, boolean isVirtual) {}
+
+// Finds MSVC vtables through RTTI. The whole of .rdata is read into memory once 
+// and Complete Object Locators and the vtables pointing to them are found in a 
+// single pass over it, instead of searching the listing for every class
+class MsvcRtti {
+    final Memory memory;
+    final SymbolTable symbols;
+    final boolean is64;
+    final int ptrSize;
+    final long imageBase;
+    final long rdataStart;
+    final ByteBuffer rdata;
+    final Address rdataAddress;
+    final ArrayList<long[]> codeRanges = new ArrayList<>();
+
+    HashMap<String, List<MsvcVtable>> vtables = new HashMap<>();
+    HashMap<String, List<RttiBase>> hierarchies = new HashMap<>();
+    HashMap<Long, String> typeNames = new HashMap<>();
+    HashMap<Long, String> importedFunctionNames = new HashMap<>();
+
+    MsvcRtti(Program program) throws MemoryAccessException {
+        memory = program.getMemory();
+        symbols = program.getSymbolTable();
+        ptrSize = program.getDefaultPointerSize();
+        is64 = ptrSize == 8;
+        imageBase = program.getImageBase().getOffset();
+
+        var block = memory.getBlock(".rdata");
+        if (block == null) {
+            throw new Error("No .rdata section found - is this a Windows binary?");
+        }
+        rdataAddress = block.getStart();
+        rdataStart = rdataAddress.getOffset();
+        var bytes = new byte[(int)block.getSize()];
+        block.getBytes(block.getStart(), bytes);
+        rdata = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (var b : memory.getBlocks()) {
+            if (b.isExecute() && b.isInitialized()) {
+                codeRanges.add(new long[] { b.getStart().getOffset(), b.getEnd().getOffset() });
+            }
         }
-        return Pattern.compile(result, flags);
     }
 
-    public static final Pattern GRAB_LINK_ATTR = Pattern.compile(
-        "link\\((?<platforms>.*?)\\)",
-        Pattern.DOTALL
-    );
-    public static final Pattern GRAB_CLASSES = Pattern.compile(
-        // Grab attributes
-        "(?<attrs>\\[\\[.*?\\]\\]\\s*)?" + 
-        // Grab name
-        "class (?<name>(?:\\w+::)*\\w+)\\s+(?::.*?)?" + 
-        // Grab body (assuming closing brace is on its own line without any preceding whitespace)
-        "\\{(?<body>.*?)^\\}",
-        Pattern.DOTALL | Pattern.MULTILINE
-    );
-    public static final Pattern GRAB_TYPE = generateRecursiveRegex(
-        "(?<lconst>\\bconst\\s+)?(?<name>(?:\\w+::)*\\w+)(?<template><(?:{0})(?:\\s*,\\s*(?:{0}))*>)?(?<rconst>\\s+const\\b)?(?<ptr>\\s*\\*+)?(?<ref>\\s*&+)?",
-        2,
-        "__depth_limit",
-        Pattern.DOTALL
-    );
-    public static final Pattern GRAB_PARAM = Pattern.compile(
-        formatRegex(
-            "(?<type>{0})(?:\\s+(?<name>\\w+))?",
-            GRAB_TYPE
-        ),
-        Pattern.DOTALL
-    );
-    public static final Pattern GRAB_FUNCTION = Pattern.compile(
-        formatRegex(
-            // Must match start of line (MULTILINE flag required) - also requires that the 
-            // function not be intended more than 4 spaces or a single tab
-            // "(?<=^(?:(?: {0,4})|\\t))" + 
-            // Get the dispatch modifier keyword if one is defined
-            "(?<dispatch>(?:inline|virtual|static|callback)\\s+)?" +
-            // Grab the return type and name of the function, or the name if it's a destructor
-            "(?:(?:(?<return>{0})\\s+(?<name>\\w+))|(?<destructor>~\\w+))" + 
-            // Grab the parameters
-            "\\(\\s*(?<params>(?:{1},?)*)\\)" +
-            // Grab the platforms
-            "(?:\\s*=\\s*(?<platforms>(?:[a-z]+\\s+0x[0-9a-fA-F]+\\s*,?\\s*)+))?",
-            GRAB_TYPE, GRAB_PARAM
-        ),
-        Pattern.DOTALL | Pattern.MULTILINE
-    );
-    public static final Pattern GRAB_WIN_ADDRESS = Pattern.compile(
-        "win\\s+0x(?<addr>[0-9a-fA-F]+)",
-        Pattern.DOTALL
-    );
-    public static final Pattern GRAB_MAC_ADDRESS = Pattern.compile(
-        "mac\\s+0x(?<addr>[0-9a-fA-F]+)",
-        Pattern.DOTALL
-    );
+    void scan() throws MemoryAccessException {
+        // Complete Object Locators by address, and every pointer into .rdata by 
+        // where it's at, since a vtable may come before its locator
+        var locators = new HashMap<Long, Integer>();
+        var rdataPointers = new ArrayList<long[]>();
+        for (var pos = 0; pos + 24 <= rdata.capacity(); pos += 4) {
+            if (isLocator(pos)) {
+                locators.put(rdataStart + pos, pos);
+            }
+            if (pos % ptrSize == 0) {
+                var value = pointerAt(pos);
+                if (value % 4 == 0 && inRdata(value, 4)) {
+                    rdataPointers.add(new long[] { pos, value });
+                }
+            }
+        }
+
+        // The pointer right before a vtable is to its locator
+        var metaPositions = new HashSet<Integer>();
+        var found = new ArrayList<long[]>();
+        for (var ptr : rdataPointers) {
+            var locator = locators.get(ptr[1]);
+            if (locator != null) {
+                metaPositions.add((int)ptr[0]);
+                found.add(new long[] { ptr[0], locator });
+            }
+        }
+        for (var ptr : found) {
+            var locator = (int)ptr[1];
+            var name = readTypeName(rttiPointer(rdata.getInt(locator + 12)));
+            var vtablePos = (int)ptr[0] + ptrSize;
+            vtables.computeIfAbsent(name, k -> new ArrayList<>()).add(new MsvcVtable(
+                name, rdata.getInt(locator + 4), rdataStart + vtablePos, readSlots(vtablePos, metaPositions)
+            ));
+            if (!hierarchies.containsKey(name)) {
+                hierarchies.put(name, readHierarchy(rttiPointer(rdata.getInt(locator + 16))));
+            }
+        }
+        for (var list : vtables.values()) {
+            list.sort((a, b) -> Integer.compare(a.offset(), b.offset()));
+        }
+    }
+
+    // Checks the locator's structure entirely from the bytes already read, so 
+    // that type names only have to be read for actual locators
+    boolean isLocator(int pos) {
+        if (rdata.getInt(pos) != (is64 ? 1 : 0)) {
+            return false;
+        }
+        // 64-bit locators point to themselves
+        if (is64 && rttiPointer(rdata.getInt(pos + 20)) != rdataStart + pos) {
+            return false;
+        }
+        var typeDescriptor = rttiPointer(rdata.getInt(pos + 12));
+        var hierarchy = rttiPointer(rdata.getInt(pos + 16));
+        if (!inRdata(hierarchy, 16) || intAt(hierarchy) != 0) {
+            return false;
+        }
+        var count = intAt(hierarchy + 8);
+        var baseArray = rttiPointer(intAt(hierarchy + 12));
+        if (count < 1 || count > 1024 || !inRdata(baseArray, count * 4)) {
+            return false;
+        }
+        // The first base is the class itself
+        var first = rttiPointer(intAt(baseArray));
+        return inRdata(first, 24) && rttiPointer(intAt(first)) == typeDescriptor;
+    }
+
+    List<RttiBase> readHierarchy(long hierarchy) throws MemoryAccessException {
+        var result = new ArrayList<RttiBase>();
+        var count = intAt(hierarchy + 8);
+        var baseArray = rttiPointer(intAt(hierarchy + 12));
+        for (var i = 0; i < count; i += 1) {
+            var descriptor = rttiPointer(intAt(baseArray + i * 4));
+            result.add(new RttiBase(
+                readTypeName(rttiPointer(intAt(descriptor))),
+                intAt(descriptor + 4),
+                intAt(descriptor + 8),
+                intAt(descriptor + 12) != -1
+            ));
+        }
+        return result;
+    }
+
+    // Read slots until something that isn't code or the start of the next vtable
+    long[] readSlots(int pos, Set<Integer> metaPositions) {
+        var slots = new ArrayList<Long>();
+        while (pos + ptrSize <= rdata.capacity() && !metaPositions.contains(pos)) {
+            var value = pointerAt(pos);
+            if (!isCode(value)) {
+                break;
+            }
+            slots.add(value);
+            pos += ptrSize;
+        }
+        return slots.stream().mapToLong(s -> s).toArray();
+    }
+
+    String readTypeName(long typeDescriptor) throws MemoryAccessException {
+        var cached = typeNames.get(typeDescriptor);
+        if (cached != null) {
+            return cached;
+        }
+        var name = new StringBuilder();
+        var addr = toAddr(typeDescriptor + 2 * ptrSize);
+        for (var i = 0; i < 1024; i += 1) {
+            var c = memory.getByte(addr.add(i));
+            if (c == 0) {
+                break;
+            }
+            name.append((char)c);
+        }
+        var result = demangleTypeName(name.toString());
+        typeNames.put(typeDescriptor, result);
+        return result;
+    }
+
+    // `.?AVGJGameLevel@@` -> `GJGameLevel`, `.?AVCCNode@cocos2d@@` -> `cocos2d::CCNode`. 
+    // Anything fancier (templates, anonymous namespaces) is kept as-is, since 
+    // Broma wouldn't have it anyway
+    static String demangleTypeName(String name) {
+        if (!(name.startsWith(".?AV") || name.startsWith(".?AU")) || !name.endsWith("@@")) {
+            return name;
+        }
+        var inner = name.substring(4, name.length() - 2);
+        if (inner.contains("?")) {
+            return name;
+        }
+        var parts = Arrays.asList(inner.split("@"));
+        Collections.reverse(parts);
+        return String.join("::", parts);
+    }
+
+    // Secondary vtables point to adjustor thunks (`sub ecx, N; jmp target`) 
+    // instead of the actual function
+    long followThunk(long address) throws MemoryAccessException {
+        var bytes = new byte[16];
+        memory.getBytes(toAddr(address), bytes);
+        var code = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        var pos = 0;
+        if (is64) {
+            if (code.get(pos) != 0x48) {
+                return address;
+            }
+            pos += 1;
+        }
+        if (code.get(pos + 1) != (byte)0xE9) {
+            return address;
+        }
+        if (code.get(pos) == (byte)0x83) {
+            pos += 3;
+        }
+        else if (code.get(pos) == (byte)0x81) {
+            pos += 6;
+        }
+        else {
+            return address;
+        }
+        if (code.get(pos) != (byte)0xE9) {
+            return address;
+        }
+        return address + pos + 5 + code.getInt(pos + 1);
+    }
+
+    // Virtuals inherited from another module (like everything from 
+    // libcocos2d.dll) are import thunks (`jmp [__imp_...]`). Returns the name 
+    // of the imported function without its class, an empty string if it can't 
+    // be told, or null if this isn't an import thunk at all
+    String getImportedFunctionName(long address) throws MemoryAccessException {
+        // Most of the slots pointing to an import share the same few thunks
+        if (importedFunctionNames.containsKey(address)) {
+            return importedFunctionNames.get(address);
+        }
+        var name = readImportedFunctionName(address);
+        importedFunctionNames.put(address, name);
+        return name;
+    }
+
+    String readImportedFunctionName(long address) throws MemoryAccessException {
+        var bytes = new byte[6];
+        memory.getBytes(toAddr(address), bytes);
+        if (bytes[0] != (byte)0xFF || bytes[1] != 0x25) {
+            return null;
+        }
+        var operand = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(2);
+        // The operand is relative to the next instruction on 64-bit
+        var importSlot = is64 ? address + 6 + operand : Integer.toUnsignedLong(operand);
+        for (var symbol : symbols.getSymbols(toAddr(importSlot))) {
+            var name = symbol.getName();
+            // Mangled MSVC names are `?name@Class@namespace@@...`
+            var mangled = name.indexOf('?');
+            if (mangled != -1) {
+                name = name.substring(mangled);
+                if (name.startsWith("??")) {
+                    return "";
+                }
+                return name.substring(1, name.indexOf('@'));
+            }
+            if (name.endsWith("_purecall")) {
+                return "_purecall";
+            }
+            // Already demangled
+            if (name.contains("::")) {
+                return name.substring(name.lastIndexOf("::") + 2);
+            }
+        }
+        return "";
+    }
+
+    MsvcVtable getVtable(String className, int offset) {
+        var list = vtables.get(className);
+        if (list == null) {
+            return null;
+        }
+        for (var table : list) {
+            if (table.offset() == offset) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    Address toAddr(long offset) {
+        return rdataAddress.getNewAddress(offset);
+    }
+
+    boolean inRdata(long address, int size) {
+        return address >= rdataStart && address + size <= rdataStart + rdata.capacity();
+    }
+
+    boolean isCode(long address) {
+        for (var range : codeRanges) {
+            if (address >= range[0] && address <= range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // RTTI uses image-relative offsets on 64-bit
+    long rttiPointer(int value) {
+        if (is64) {
+            return imageBase + Integer.toUnsignedLong(value);
+        }
+        return Integer.toUnsignedLong(value);
+    }
+
+    long pointerAt(int pos) {
+        if (is64) {
+            return rdata.getLong(pos);
+        }
+        return Integer.toUnsignedLong(rdata.getInt(pos));
+    }
+
+    int intAt(long address) {
+        return rdata.getInt((int)(address - rdataStart));
+    }
 }
 
-enum CConv {
-    CDECL,
-    THISCALL,
-    MEMBERCALL,
-    FASTCALL,
-    OPTCALL,
+// A virtual function declared in Broma. Commented out declarations are kept 
+// too, since the function still takes up a slot in the vtable
+record VirtualDecl(String className, String name, String signature, String declaration, boolean commented, Long address) {}
+
+// Maps Broma's virtual declarations onto vtable slots using MSVC's layout rules: 
+// a class's vtable starts with its primary base's slots, followed by the new 
+// virtuals in declaration order, except that overloads are grouped together 
+// in reverse order. Bases from another module (like cocos2d classes from 
+// libcocos2d.dll) don't have a vtable in the binary, so their slots are worked 
+// out from the functions that the classes deriving from them import. Nothing 
+// is assigned to a slot that couldn't be checked against the binary
+class MsvcVtableMapper {
+    record Slot(VirtualDecl decl, long address) {}
+
+    // The slots a table inherits from a base, and which of them the class overrides
+    record InheritedSlots(String[] names, boolean[] overridden) {}
+
+    final MsvcRtti rtti;
+    final Map<String, List<VirtualDecl>> declared;
+    HashMap<String, String[]> slotNames = new HashMap<>();
+    ArrayList<Slot> slots = new ArrayList<>();
+    TreeMap<String, List<String>> problems = new TreeMap<>();
+    // For each class from another module, the names of the functions that 
+    // classes in this binary import into each of its slots. Every class that 
+    // doesn't override a virtual imports it, so between all of them this 
+    // covers almost all of the class's slots
+    HashMap<String, ArrayList<Set<String>>> importedNames = new HashMap<>();
+
+    MsvcVtableMapper(MsvcRtti rtti, Map<String, List<VirtualDecl>> declared) throws MemoryAccessException {
+        this.rtti = rtti;
+        this.declared = declared;
+        for (var entry : rtti.vtables.entrySet()) {
+            var hierarchy = rtti.hierarchies.get(entry.getKey());
+            if (hierarchy == null) {
+                continue;
+            }
+            for (var table : entry.getValue()) {
+                var external = findExternalBase(hierarchy, table.offset());
+                if (external == null) {
+                    continue;
+                }
+                var names = importedNames.computeIfAbsent(external, k -> new ArrayList<>());
+                for (var i = 0; i < table.slots().length; i += 1) {
+                    var name = rtti.getImportedFunctionName(table.slots()[i]);
+                    if (name == null) {
+                        continue;
+                    }
+                    while (names.size() <= i) {
+                        names.add(new HashSet<>());
+                    }
+                    if (!name.isEmpty() && !name.equals("_purecall")) {
+                        names.get(i).add(name);
+                    }
+                }
+            }
+        }
+    }
+
+    void addProblem(String className, String fmt, Object... args) {
+        problems.computeIfAbsent(className, k -> new ArrayList<>()).add(MessageFormat.format(fmt, args));
+    }
+
+    // Returns the signature of every slot in the class's primary vtable (or 
+    // null for slots that couldn't be figured out), or null if the class has 
+    // no vtable at all
+    String[] resolve(String className) throws MemoryAccessException {
+        if (slotNames.containsKey(className)) {
+            return slotNames.get(className);
+        }
+        slotNames.put(className, null);
+        var table = rtti.getVtable(className, 0);
+        var hierarchy = rtti.hierarchies.get(className);
+        if (table == null || hierarchy == null) {
+            return null;
+        }
+        var own = new HashMap<String, VirtualDecl>();
+        for (var decl : declared.getOrDefault(className, List.of())) {
+            own.put(decl.signature(), decl);
+        }
+        var names = new String[table.slots().length];
+        slotNames.put(className, names);
+
+        var primaryChain = new HashSet<Integer>();
+        for (var i = findPrimaryBase(hierarchy, 0); i != -1; i = findPrimaryBase(hierarchy, i)) {
+            primaryChain.add(i);
+        }
+
+        // Anything a base has is an override rather than a new slot
+        var inherited = new HashSet<String>();
+        var primaryOverrides = 0;
+        for (var decl : own.values()) {
+            if (decl.signature().equals("~") || !overridesBase(hierarchy, decl)) {
+                continue;
+            }
+            inherited.add(decl.signature());
+            if (isInPrimaryVtable(hierarchy, primaryChain, decl)) {
+                primaryOverrides += 1;
+            }
+        }
+
+        var baseCount = 0;
+        var primary = findPrimaryBase(hierarchy, 0);
+        if (primary != -1) {
+            // The destructor always overrides if there's a base with a vtable
+            inherited.add("~");
+            var length = table.slots().length - orderNewVirtuals(declared.getOrDefault(className, List.of()), inherited).size();
+            if (length < 0) {
+                addProblem(className, "Broma has more new virtuals than the vtable has slots");
+                return names;
+            }
+            // The deleting destructor is always overridden too
+            var base = inherit(className, hierarchy, primary, table.slots(), length, primaryOverrides + 1);
+            if (base == null) {
+                return names;
+            }
+            baseCount = base.names().length;
+            for (var i = 0; i < baseCount; i += 1) {
+                names[i] = base.names()[i];
+                if (base.overridden()[i] && names[i] != null && own.containsKey(names[i])) {
+                    claim(own.get(names[i]), table.slots()[i]);
+                }
+            }
+        }
+
+        var added = orderNewVirtuals(declared.getOrDefault(className, List.of()), inherited);
+        if (names.length != baseCount + added.size()) {
+            addProblem(
+                className, "Broma gives {0} inherited and {1} new virtuals, but the vtable has {2} slots",
+                baseCount, added.size(), names.length
+            );
+        }
+        else {
+            for (var i = 0; i < added.size(); i += 1) {
+                names[baseCount + i] = added.get(i).signature();
+                claim(added.get(i), table.slots()[baseCount + i]);
+            }
+        }
+
+        // Overrides of the other bases' virtuals are in their own vtables
+        for (var secondary : rtti.vtables.get(className)) {
+            if (secondary.offset() == 0) {
+                continue;
+            }
+            var index = findBaseAt(hierarchy, secondary.offset());
+            if (index == -1) {
+                continue;
+            }
+            var base = inherit(className, hierarchy, index, secondary.slots(), secondary.slots().length, -1);
+            if (base == null) {
+                continue;
+            }
+            if (base.names().length != secondary.slots().length) {
+                addProblem(
+                    className, "{0} has {1} virtuals, but its vtable in {2} has {3} slots",
+                    hierarchy.get(index).name(), base.names().length, className, secondary.slots().length
+                );
+                continue;
+            }
+            for (var i = 0; i < base.names().length; i += 1) {
+                var name = base.names()[i];
+                if (base.overridden()[i] && name != null && own.containsKey(name)) {
+                    claim(own.get(name), rtti.followThunk(secondary.slots()[i]));
+                }
+            }
+        }
+        return names;
+    }
+
+    // Figures out the slots that a table of the class inherits from one of 
+    // its bases, or returns null (and records why) if they can't be checked. 
+    // For bases from another module, `length` is how many slots the base 
+    // should have and `overrides` is how many of them the class should 
+    // override, or -1 if that isn't known
+    InheritedSlots inherit(
+        String className, List<RttiBase> hierarchy, int index, long[] table, int length, int overrides
+    ) throws MemoryAccessException {
+        var base = hierarchy.get(index);
+        var baseTable = rtti.getVtable(base.name(), 0);
+
+        // If the base is in this binary, the slots the class overrides are 
+        // the ones that differ from the base's vtable
+        if (baseTable != null) {
+            var names = resolve(base.name());
+            if (names == null || names.length > table.length) {
+                addProblem(className, "{0}''s vtable is bigger than {1}''s", base.name(), className);
+                return null;
+            }
+            var overridden = new boolean[names.length];
+            for (var i = 0; i < names.length; i += 1) {
+                overridden[i] = table[i] != baseTable.slots()[i];
+            }
+            return new InheritedSlots(names, overridden);
+        }
+
+        // Otherwise the slots the class doesn't override are imports, and the 
+        // rest must be exactly the overrides Broma declares
+        var imported = importedNames.getOrDefault(base.name(), new ArrayList<>());
+        if (length < imported.size()) {
+            addProblem(
+                className, "{0} has at least {1} virtuals, but Broma only leaves {2} slots for them",
+                base.name(), imported.size(), length
+            );
+            return null;
+        }
+        var names = new String[length];
+        var overridden = new boolean[length];
+        var overriddenCount = 0;
+        for (var i = 0; i < table.length; i += 1) {
+            var name = rtti.getImportedFunctionName(table[i]);
+            if (i >= length) {
+                if (name != null) {
+                    addProblem(
+                        className, "slot {0} is inherited from {1}, but Broma says it''s a new virtual",
+                        i, base.name()
+                    );
+                    return null;
+                }
+                continue;
+            }
+            overridden[i] = name == null;
+            if (overridden[i]) {
+                overriddenCount += 1;
+            }
+            if (i < imported.size()) {
+                names[i] = findSignature(className, hierarchy, imported, i);
+            }
+            final var signature = names[i];
+            if (!overridden[i] && signature != null && declared.getOrDefault(className, List.of()).stream().anyMatch(
+                d -> d.signature().equals(signature)
+            )) {
+                addProblem(
+                    className, "Broma says it overrides {0}, but slot {1} is imported from {2}",
+                    signature, i, base.name()
+                );
+                return null;
+            }
+        }
+        if (overrides != -1 && overriddenCount != overrides) {
+            addProblem(
+                className, "it overrides {0} of {1}''s slots, but Broma declares {2} (counting the destructor)",
+                overriddenCount, base.name(), overrides
+            );
+            return null;
+        }
+        return new InheritedSlots(names, overridden);
+    }
+
+    // The signature of a slot in a class from another module, going by the 
+    // name of the function imported into it, if that's unambiguous
+    String findSignature(String className, List<RttiBase> hierarchy, List<Set<String>> imported, int index) {
+        if (imported.get(index).size() != 1) {
+            return null;
+        }
+        var name = imported.get(index).iterator().next();
+        // Overloads can't be told apart by name
+        if (imported.stream().filter(names -> names.contains(name)).count() > 1) {
+            return null;
+        }
+        var signatures = new HashSet<String>();
+        for (var decl : declared.getOrDefault(className, List.of())) {
+            if (decl.name().equals(name)) {
+                signatures.add(decl.signature());
+            }
+        }
+        for (var base : hierarchy) {
+            for (var decl : declared.getOrDefault(base.name(), List.of())) {
+                if (decl.name().equals(name)) {
+                    signatures.add(decl.signature());
+                }
+            }
+        }
+        return signatures.size() == 1 ? signatures.iterator().next() : null;
+    }
+
+    // Whether the declaration overrides a base's virtual rather than adding a 
+    // new one. Cocos2d.bro doesn't have all of cocos2d's virtuals, so bases 
+    // from another module are also checked against the functions imported 
+    // into their slots
+    boolean overridesBase(List<RttiBase> hierarchy, VirtualDecl decl) {
+        for (var i = 1; i < hierarchy.size(); i += 1) {
+            for (var base : declared.getOrDefault(hierarchy.get(i).name(), List.of())) {
+                if (base.signature().equals(decl.signature())) {
+                    return true;
+                }
+            }
+        }
+        // A different overload of a base's virtual is a new virtual
+        for (var i = 1; i < hierarchy.size(); i += 1) {
+            for (var base : declared.getOrDefault(hierarchy.get(i).name(), List.of())) {
+                if (base.name().equals(decl.name())) {
+                    return false;
+                }
+            }
+        }
+        for (var i = 1; i < hierarchy.size(); i += 1) {
+            if (isImportedInto(hierarchy.get(i).name(), decl.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether an override goes in the primary vtable. Broma declares some 
+    // overrides of secondary bases' virtuals in the primary base too (like 
+    // CCLayer::ccTouchBegan), but those don't get a slot there
+    boolean isInPrimaryVtable(List<RttiBase> hierarchy, Set<Integer> primaryChain, VirtualDecl decl) {
+        var primaryBase = findExternalBase(hierarchy, 0);
+        if (primaryBase != null && isImportedInto(primaryBase, decl.name())) {
+            return true;
+        }
+        for (var i = 1; i < hierarchy.size(); i += 1) {
+            if (primaryChain.contains(i)) {
+                continue;
+            }
+            var name = hierarchy.get(i).name();
+            if (isImportedInto(name, decl.name())) {
+                return false;
+            }
+            for (var base : declared.getOrDefault(name, List.of())) {
+                if (base.signature().equals(decl.signature())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    boolean isImportedInto(String className, String functionName) {
+        var imported = importedNames.get(className);
+        return imported != null && imported.stream().anyMatch(names -> names.contains(functionName));
+    }
+
+    void claim(VirtualDecl decl, long address) {
+        // The slot has the deleting destructor, which isn't the destructor itself
+        if (decl.signature().equals("~")) {
+            return;
+        }
+        slots.add(new Slot(decl, address));
+    }
+
+    static List<VirtualDecl> orderNewVirtuals(List<VirtualDecl> decls, Set<String> inherited) {
+        var added = decls.stream().filter(d -> !inherited.contains(d.signature())).toList();
+        var result = new ArrayList<VirtualDecl>();
+        var seen = new HashSet<String>();
+        for (var decl : added) {
+            if (seen.add(decl.name())) {
+                var overloads = new ArrayList<>(added.stream().filter(d -> d.name().equals(decl.name())).toList());
+                Collections.reverse(overloads);
+                result.addAll(overloads);
+            }
+        }
+        return result;
+    }
+
+    // The nearest class from another module whose layout the vtable at an 
+    // offset follows, or null if it's laid out by classes in this binary
+    String findExternalBase(List<RttiBase> hierarchy, int offset) {
+        var index = offset == 0 ? findPrimaryBase(hierarchy, 0) : findBaseAt(hierarchy, offset);
+        for (; index != -1; index = findPrimaryBase(hierarchy, index)) {
+            var name = hierarchy.get(index).name();
+            if (rtti.getVtable(name, 0) == null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    // The first non-virtual direct base of the entry at `index` that shares 
+    // its vtable, or -1 if there's none
+    static int findPrimaryBase(List<RttiBase> hierarchy, int index) {
+        var derived = hierarchy.get(index);
+        for (var i = index + 1; i <= index + derived.containedBases(); i += 1 + hierarchy.get(i).containedBases()) {
+            var base = hierarchy.get(i);
+            if (base.offset() == derived.offset() && !base.isVirtual()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // The most derived base at an offset, which is the one whose vtable layout 
+    // the secondary vtable there follows
+    static int findBaseAt(List<RttiBase> hierarchy, int offset) {
+        for (var i = 1; i < hierarchy.size(); i += 1) {
+            var base = hierarchy.get(i);
+            if (base.offset() == offset && !base.isVirtual()) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
 
 public class SyncBromaScript extends GhidraScript {
     int importedAddCount = 0;
     int importedUpdateCount = 0;
 
+    // Interned signature shapes and the storage computed for them
+    HashMap<SignatureShape, VariableStorage[]> storageTemplates = new HashMap<>();
+    HashMap<String, Register> registers = new HashMap<>();
+
+    // Interned Broma types and what they resolved to in the current program
+    TypeParser typeParser = new TypeParser();
+    HashMap<TypeName, DataType> resolvedTypes = new HashMap<>();
+    FileDataTypeManager typeArchive = null;
+
+    // Android functions are found by their mangled names
+    ItaniumMangler mangler = null;
+    HashMap<String, Address> symbolIndex = new HashMap<>();
+    List<String> unresolvedSymbols = new ArrayList<>();
+
+    static final Map<String, DataType> BUILTIN_TYPES = Map.ofEntries(
+        Map.entry("void", VoidDataType.dataType),
+        Map.entry("bool", BooleanDataType.dataType),
+        Map.entry("char", CharDataType.dataType),
+        Map.entry("signed char", SignedCharDataType.dataType),
+        Map.entry("unsigned char", UnsignedCharDataType.dataType),
+        Map.entry("short", ShortDataType.dataType),
+        Map.entry("unsigned short", UnsignedShortDataType.dataType),
+        Map.entry("int", IntegerDataType.dataType),
+        Map.entry("unsigned int", UnsignedIntegerDataType.dataType),
+        Map.entry("long", LongDataType.dataType),
+        Map.entry("unsigned long", UnsignedLongDataType.dataType),
+        Map.entry("long long", LongLongDataType.dataType),
+        Map.entry("unsigned long long", UnsignedLongLongDataType.dataType),
+        Map.entry("float", FloatDataType.dataType),
+        Map.entry("double", DoubleDataType.dataType)
+    );
+
     public void run() throws Exception {
         // Get the bindings directory from the location of this script
         // todo: maybe ask the user for this if the script is not in the expected place?
@@ -147,6 +876,10 @@ public class SyncBromaScript extends GhidraScript {
 
         // Get the target platform and version from the user
         var map = new GhidraValuesMap();
+        map.defineChoice(
+            "Action", "Sync",
+            "Sync", "Import virtuals from RTTI (Windows-only)", "Coverage report", "Export type archive"
+        );
         map.defineChoice("Target platform", null, getPlatformOptions().toArray(String[]::new));
         map.defineChoice("Broma file (Windows-only)", null, targetBromas.toArray(String[]::new));
         map.defineChoice(
@@ -154,6 +887,7 @@ public class SyncBromaScript extends GhidraScript {
             versions.get(versions.size() - 1).getName().toString(),
             versions.stream().map(e -> e.getName().toString()).toArray(String[]::new)
         );
+        map.defineFile("Type archive (optional)", null);
         askValues(
             "Sync Broma",
             "Import addresses & signatures from Broma, and add new ones " + 
@@ -162,14 +896,43 @@ public class SyncBromaScript extends GhidraScript {
         );
         var platform = map.getChoice("Target platform");
         var version = map.getChoice("Game version");
+        var allBromas = targetBromas;
         if (platform == "Windows") {
             targetBromas = List.of(map.getChoice("Broma file (Windows-only)"));
         }
         var platformAddrGrab = getPlatformAddrPattern(platform);
 
-        printfmt("Loading addresses from Bindings...");
         var bindingsVerDir = new File(bindingsDir.toPath().toString() + "/" + version);
-        var listing = currentProgram.getListing();
+        if (map.getChoice("Action").equals("Coverage report")) {
+            writeCoverageReport(bindingsVerDir, targetBromas, platform);
+            return;
+        }
+        if (map.getChoice("Action").equals("Export type archive")) {
+            writeTypeArchive(bindingsVerDir, allBromas);
+            return;
+        }
+
+        // Types are looked up from the archive before guessing new ones
+        var archiveFile = map.getFile("Type archive (optional)");
+        if (archiveFile != null) {
+            typeArchive = FileDataTypeManager.openFileArchive(archiveFile, false);
+            printfmt("Using types from {0}", archiveFile.toPath());
+        }
+
+        if (isAndroid(platform)) {
+            mangler = new ItaniumMangler(platform.equals("Android64"));
+            buildSymbolIndex();
+        }
+
+        if (map.getChoice("Action").startsWith("Import virtuals from RTTI")) {
+            if (!platform.equals("Windows")) {
+                throw new Error("Importing virtuals from RTTI only works for Windows binaries");
+            }
+            importVirtuals(bindingsVerDir, targetBromas, allBromas);
+            return;
+        }
+
+        printfmt("Loading addresses from Bindings...");
 
         // Read the broma files and merge function addresses & their signatures into Ghidra
         for (var bro : targetBromas) {
@@ -190,9 +953,10 @@ public class SyncBromaScript extends GhidraScript {
                         }
                     }
                     final var link = linkValue;
+                    final var body = cls.group("body");
                     matchAll(
                         Regexes.GRAB_FUNCTION, 
-                        cls.group("body"),
+                        body,
                         fun -> {
                             // Get function name either from destructor or custom name
                             var name = fun.group("destructor");
@@ -201,248 +965,612 @@ public class SyncBromaScript extends GhidraScript {
                             }
                             final var fullName = cls.group("name") + "::" + name;
 
-                            // Get the address of this function on the platform, 
-                            // or if it's not defined, then skip this function 
-                            // (since there's nothing to import)
-                            var platforms = fun.group("platforms");
-                            if (platforms == null) {
-                                return;
-                            }
-                            var plat = platformAddrGrab.matcher(platforms);
-                            if (!plat.find()) {
+                            // Commented out bindings aren't bindings
+                            if (Regexes.isCommentedOut(body, fun.start())) {
                                 return;
                             }
-                            var offset = Integer.parseInt(plat.group("addr"), 16);
-                            // The hardcoded placeholder addr
-                            if (offset == 0x9999999) {
-                                return;
+
+                            Address addr;
+                            if (isAndroid(platform)) {
+                                // Android bindings are linked by symbol, so look 
+                                // the function up by its mangled name instead
+                                addr = findMangledSymbol(cls.group("name"), name, fun);
+                                if (addr == null) {
+                                    unresolvedSymbols.add(fullName);
+                                    return;
+                                }
                             }
-                            var addr = currentProgram.getImageBase().add(offset);
-
-                            var didUpdateThis = false;
-                            var didAddThis = false;
-
-                            // Get the function defined at the address, or 
-                            var data = listing.getFunctionAt(addr);
-                            if (data == null) {
-                                didAddThis = true;
-                                data = createFunction(addr, name);
-                                if (data == null) {
-                                    throw new Error("Unable to create a function at address " + addr.toString());
+                            else {
+                                // Get the address of this function on the platform, 
+                                // or if it's not defined, then skip this function 
+                                // (since there's nothing to import)
+                                var platforms = fun.group("platforms");
+                                if (platforms == null) {
+                                    return;
                                 }
-                                data.setParentNamespace(parseNamespace(cls.group("name")));
+                                var plat = platformAddrGrab.matcher(platforms);
+                                if (!plat.find()) {
+                                    return;
+                                }
+                                var offset = Integer.parseInt(plat.group("addr"), 16);
+                                // The hardcoded placeholder addr
+                                if (offset == 0x9999999) {
+                                    return;
+                                }
+                                addr = currentProgram.getImageBase().add(offset);
                             }
 
-                            // Get the calling convention
-                            final var conv = getCallingConvention(platform, link, fun);
-                            
-                            // Parse return type, or null if this is a destructor
-                            ReturnParameterImpl bromaRetType = null;
-                            var retTypeStr = fun.group("return");
-                            if (retTypeStr != null) {
-                                bromaRetType = new ReturnParameterImpl(
-                                    parseType(retTypeStr),
-                                    currentProgram
-                                );
-                            }
+                            importFunction(
+                                cls.group("name"), name, fun, addr,
+                                getCallingConvention(platform, link, fun)
+                            );
+                        }
+                    );
+                }
+            );
+        }
 
-                            // Parse args
-                            var collectBromaParams = new ArrayList<Variable>();
-
-                            // Add `this` arg
-                            final var dispatch = fun.group("dispatch");
-                            if (dispatch == null || !dispatch.equals("static")) {
-                                collectBromaParams.add(new ParameterImpl(
-                                    "this",
-                                    parseType(cls.group("name") + "*"),
-                                    currentProgram
-                                ));
-                            }
+        printfmt("Added {0} functions & updated {1} functions from Broma", importedAddCount, importedUpdateCount);
+        if (!unresolvedSymbols.isEmpty()) {
+            printfmt("{0} functions had no matching symbol:", unresolvedSymbols.size());
+            for (var name : unresolvedSymbols) {
+                printfmt("    {0}", name);
+            }
+        }
+    }
 
-                            printfmt("ret: {0}", bromaRetType);
+    void buildSymbolIndex() {
+        for (var symbol : currentProgram.getSymbolTable().getAllSymbols(true)) {
+            // Ghidra keeps the mangled name as a secondary label after demangling
+            if (!symbol.isExternal() && symbol.getName().startsWith("_Z")) {
+                symbolIndex.putIfAbsent(symbol.getName(), symbol.getAddress());
+            }
+        }
+        printfmt("Indexed {0} mangled symbols", symbolIndex.size());
+    }
 
-                            // Struct return
-                            if (bromaRetType != null && bromaRetType.getDataType() instanceof StructureDataType) {
-                                collectBromaParams.add(new ParameterImpl(
-                                    "ret",
-                                    bromaRetType.getDataType(),
-                                    currentProgram
-                                ));
-                            }
-                            
-                            matchAll(
-                                Regexes.GRAB_PARAM,
-                                fun.group("params"),
-                                param -> {
-                                    collectBromaParams.add(new ParameterImpl(
-                                        param.group("name"),
-                                        parseType(param.group("type")),
-                                        currentProgram
-                                    ));
-                                }
-                            );
-                            // Have to assign this outside the closure because otherwise Java
-                            // complains about effective finality...
-                            var bromaParams = collectBromaParams;
+    Address findMangledSymbol(String clsName, String name, Matcher fun) {
+        var params = new ArrayList<TypeExpr>();
+        for (var param : typeParser.parseParams(fun.group("params"))) {
+            params.add(param.type());
+        }
+        // Destructors have multiple variants, so try all of them
+        for (var mangled : mangler.mangleFunction(clsName, name, params, fun.group("const") != null)) {
+            var addr = symbolIndex.get(mangled);
+            if (addr != null) {
+                return addr;
+            }
+        }
+        return null;
+    }
 
-                            // Ask for mismatches between the incoming signature
+    void importFunction(String clsName, String name, Matcher fun, Address addr, CConv conv) throws Exception {
+        final var fullName = clsName + "::" + name;
 
-                            var signatureConflict = false;
+        var didUpdateThis = false;
+        var didAddThis = false;
 
-                            // If the Ghidra function has more parameters than Broma, 
-                            // then ask for whole signature override
-                            if (data.getParameterCount() > bromaParams.size()) {
-                                signatureConflict = true;
-                            }
-                            else {
-                                for (var i = 0; i < data.getParameterCount(); i += 1) {
-                                    var param = data.getParameter(i);
-                                    var bromaParam = bromaParams.get(i);
-                                    // Only care about mismatches against user-defined types
-                                    if (param.getSource() == SourceType.USER_DEFINED) {
-                                        if (
-                                            !param.getDataType().isEquivalent(bromaParam.getDataType()) ||
-                                            (
-                                                param.getName() != null && bromaParam.getName() != null &&
-                                                !param.getName().equals(bromaParam.getName())
-                                            )
-                                        ) {
-                                            signatureConflict = true;
-                                        }
-                                    }
-                                }
-                            }
-                            // Destructor signatures are weird
-                            if (fun.group("destructor") != null) {
-                                signatureConflict = false;
-                            }
-                            if (signatureConflict) {
-                                if (!askBromaConflict(
-                                    fullName, "signature",
-                                    "(" + String.join(", ", bromaParams
-                                        .stream()
-                                        .map(p -> p.getDataType().toString() + " " + p.getName())
-                                        .toArray(String[]::new)
-                                    ) + ")",
-                                    "(" + String.join(", ", Arrays.asList(data.getParameters())
-                                        .stream()
-                                        .map(p -> p.getDataType() + " " + p.getName())
-                                        .toArray(String[]::new)
-                                    ) + ")"
-                                )) {
-                                    bromaParams = new ArrayList<Variable>(Arrays.asList(data.getParameters()));
-                                    didUpdateThis = true;
-                                }
-                            }
-                            if (data.getReturn().getSource() == SourceType.USER_DEFINED && bromaRetType != null) {
-                                if (!data.getReturnType().isEquivalent(bromaRetType.getDataType())) {
-                                    if (!askBromaConflict(
-                                        fullName, "return type",
-                                        bromaRetType.getDataType(), data.getReturnType()
-                                    )) {
-                                        bromaRetType = null;
-                                    }
-                                    else {
-                                        didUpdateThis = true;
-                                    }
-                                }
-                            }
+        // Get the function defined at the address, or 
+        var data = currentProgram.getListing().getFunctionAt(addr);
+        if (data == null) {
+            didAddThis = true;
+            data = createFunction(addr, name);
+            if (data == null) {
+                throw new Error("Unable to create a function at address " + addr.toString());
+            }
+            data.setParentNamespace(parseNamespace(clsName));
+        }
 
-                            FunctionUpdateType updateType;
-                            // Manual storage for custom calling conventions
-                            if (
-                                (conv == CConv.MEMBERCALL || conv == CConv.OPTCALL) && 
-                                // Only do manual storage if there's actually a need for it
-                                bromaParams.stream().anyMatch(p ->
-                                    p.getDataType() instanceof StructureDataType ||
-                                    p.getDataType() instanceof FloatDataType
-                                )
-                            ) {
-                                updateType = FunctionUpdateType.CUSTOM_STORAGE;
-                                var reorderedParams = new ArrayList<Variable>(bromaParams);
-                                // Thanks stable sort <3
-                                reorderedParams.sort((a, b) -> {
-                                    final var aIs = a.getDataType() instanceof StructureDataType;
-                                    final var bIs = b.getDataType() instanceof StructureDataType;
-                                    if (aIs && bIs) return 0;
-                                    if (aIs) return 1;
-                                    if (bIs) return -1;
-                                    return 0;
-                                });
-                                var stackOffset = 0;
-                                for (var i = 0; i < bromaParams.size(); i += 1) {
-                                    var param = bromaParams.get(i);
-                                    final var type = param.getDataType();
-                                    VariableStorage storage;
-                                    if (i < 5 && type instanceof AbstractFloatDataType) {
-                                        // (p)rocessor (reg)ister
-                                        String preg = null;
-                                        if (type instanceof FloatDataType) {
-                                            preg = "XMM" + i + "_Da";
-                                        }
-                                        else if (type instanceof DoubleDataType) {
-                                            preg = "XMM" + i + "_Qa";
-                                        }
-                                        else {
-                                            throw new Error(
-                                                "Parameter has type " + type.toString() +
-                                                ", which is floating-point type but has an unknown register location"
-                                            );
-                                        }
-                                        storage = new VariableStorage(currentProgram, currentProgram.getRegister(preg));
-                                    }
-                                    else {
-                                        if (i == 0) {
-                                            storage = new VariableStorage(currentProgram, currentProgram.getRegister("ECX"));
-                                        }
-                                        else if (conv == CConv.OPTCALL && i == 1 && !(type instanceof StructureDataType)) {
-                                            storage = new VariableStorage(currentProgram, currentProgram.getRegister("EDX"));
-                                        }
-                                        else {
-                                            if (type.isNotYetDefined()) {
-                                                printfmt(
-                                                    "Warning: function {0} has parameter {1} of an undefined " + 
-                                                    "struct type - you will need to manually fix this later!",
-                                                    fullName, param.getName()
-                                                );
-                                            }
-                                            storage = new VariableStorage(currentProgram, stackOffset, type.getLength());
-                                            stackOffset += reorderedParams.get(i).getLength();
-                                        }
-                                    }
-                                    param.setDataType(type, storage, true, SourceType.ANALYSIS);
-                                }
-                            }
-                            // Use dynamic storage for calling conventions Ghidra knows
-                            else {
-                                updateType = FunctionUpdateType.DYNAMIC_STORAGE_ALL_PARAMS;
-                            }
+        // Parse return type, or null if this is a destructor
+        ReturnParameterImpl bromaRetType = null;
+        var retTypeStr = fun.group("return");
+        if (retTypeStr != null) {
+            bromaRetType = new ReturnParameterImpl(
+                parseType(retTypeStr),
+                currentProgram
+            );
+        }
 
-                            if (didAddThis) {
-                                importedAddCount += 1;
-                                printfmt("Added {0}", fullName);
-                            }
-                            else if (didUpdateThis) {
-                                importedUpdateCount += 1;
-                                printfmt("Updated {0}", fullName);
+        // Parse args
+        var collectBromaParams = new ArrayList<Variable>();
+
+        // Add `this` arg
+        final var dispatch = fun.group("dispatch");
+        if (dispatch == null || !dispatch.equals("static")) {
+            collectBromaParams.add(new ParameterImpl(
+                "this",
+                parseType(clsName + "*"),
+                currentProgram
+            ));
+        }
+
+        printfmt("ret: {0}", bromaRetType);
+
+        // Struct return
+        if (bromaRetType != null && bromaRetType.getDataType() instanceof StructureDataType) {
+            collectBromaParams.add(new ParameterImpl(
+                "ret",
+                bromaRetType.getDataType(),
+                currentProgram
+            ));
+        }
+        
+        for (var param : typeParser.parseParams(fun.group("params"))) {
+            collectBromaParams.add(new ParameterImpl(
+                param.name(),
+                resolveType(param.type()),
+                currentProgram
+            ));
+        }
+        var bromaParams = collectBromaParams;
+
+        // Ask for mismatches between the incoming signature
+
+        var signatureConflict = false;
+
+        // If the Ghidra function has more parameters than Broma, 
+        // then ask for whole signature override
+        if (data.getParameterCount() > bromaParams.size()) {
+            signatureConflict = true;
+        }
+        else {
+            for (var i = 0; i < data.getParameterCount(); i += 1) {
+                var param = data.getParameter(i);
+                var bromaParam = bromaParams.get(i);
+                // Only care about mismatches against user-defined types
+                if (param.getSource() == SourceType.USER_DEFINED) {
+                    if (
+                        !param.getDataType().isEquivalent(bromaParam.getDataType()) ||
+                        (
+                            param.getName() != null && bromaParam.getName() != null &&
+                            !param.getName().equals(bromaParam.getName())
+                        )
+                    ) {
+                        signatureConflict = true;
+                    }
+                }
+            }
+        }
+        // Destructor signatures are weird
+        if (fun.group("destructor") != null) {
+            signatureConflict = false;
+        }
+        if (signatureConflict) {
+            if (!askBromaConflict(
+                fullName, "signature",
+                "(" + String.join(", ", bromaParams
+                    .stream()
+                    .map(p -> p.getDataType().toString() + " " + p.getName())
+                    .toArray(String[]::new)
+                ) + ")",
+                "(" + String.join(", ", Arrays.asList(data.getParameters())
+                    .stream()
+                    .map(p -> p.getDataType() + " " + p.getName())
+                    .toArray(String[]::new)
+                ) + ")"
+            )) {
+                bromaParams = new ArrayList<Variable>(Arrays.asList(data.getParameters()));
+                didUpdateThis = true;
+            }
+        }
+        if (data.getReturn().getSource() == SourceType.USER_DEFINED && bromaRetType != null) {
+            if (!data.getReturnType().isEquivalent(bromaRetType.getDataType())) {
+                if (!askBromaConflict(
+                    fullName, "return type",
+                    bromaRetType.getDataType(), data.getReturnType()
+                )) {
+                    bromaRetType = null;
+                }
+                else {
+                    didUpdateThis = true;
+                }
+            }
+        }
+
+        FunctionUpdateType updateType;
+        // Manual storage for custom calling conventions
+        if (
+            (conv == CConv.MEMBERCALL || conv == CConv.OPTCALL) && 
+            // Only do manual storage if there's actually a need for it
+            bromaParams.stream().anyMatch(p ->
+                p.getDataType() instanceof StructureDataType ||
+                p.getDataType() instanceof FloatDataType
+            )
+        ) {
+            updateType = FunctionUpdateType.CUSTOM_STORAGE;
+            // Many functions share the same parameter shape, so the storage
+            // layout is only computed once per shape and then reused
+            final var storages = getStorageTemplate(SignatureShape.of(conv, bromaParams));
+            for (var i = 0; i < bromaParams.size(); i += 1) {
+                var param = bromaParams.get(i);
+                final var type = param.getDataType();
+                if (storages[i].isStackStorage() && type.isNotYetDefined()) {
+                    printfmt(
+                        "Warning: function {0} has parameter {1} of an undefined " + 
+                        "struct type - you will need to manually fix this later!",
+                        fullName, param.getName()
+                    );
+                }
+                param.setDataType(type, storages[i], true, SourceType.ANALYSIS);
+            }
+        }
+        // Use dynamic storage for calling conventions Ghidra knows
+        else {
+            updateType = FunctionUpdateType.DYNAMIC_STORAGE_ALL_PARAMS;
+        }
+
+        if (didAddThis) {
+            importedAddCount += 1;
+            printfmt("Added {0}", fullName);
+        }
+        else if (didUpdateThis) {
+            importedUpdateCount += 1;
+            printfmt("Updated {0}", fullName);
+        }
+
+        // Apply new signature
+        data.updateFunction(
+            getCConvName(conv),
+            bromaRetType,
+            updateType,
+            true,
+            SourceType.ANALYSIS,
+            bromaParams.toArray(Variable[]::new)
+        );
+    }
+
+    void importVirtuals(File bindingsVerDir, List<String> targetBromas, List<String> allBromas) throws Exception {
+        // Bases may be in the other Broma file, so read everything
+        var declared = new HashMap<String, List<VirtualDecl>>();
+        var targetClasses = new TreeSet<String>();
+        for (var bro : allBromas) {
+            var file = new File(bindingsVerDir.toPath().toString() + "/" + bro);
+            printfmt("Reading {0}...", bro);
+            matchAll(
+                Regexes.GRAB_CLASSES,
+                new String(Files.readAllBytes(file.toPath())),
+                cls -> {
+                    final var clsName = cls.group("name");
+                    final var body = cls.group("body");
+                    if (targetBromas.contains(bro)) {
+                        targetClasses.add(clsName);
+                    }
+                    var decls = declared.computeIfAbsent(clsName, k -> new ArrayList<>());
+                    var signatures = new HashSet<String>();
+                    matchAll(Regexes.GRAB_FUNCTION, body, fun -> {
+                        var dispatch = fun.group("dispatch");
+                        if (dispatch == null || !dispatch.trim().equals("virtual")) {
+                            return;
+                        }
+                        var signature = getVirtualSignature(fun);
+                        if (!signatures.add(signature)) {
+                            return;
+                        }
+                        var name = fun.group("destructor");
+                        if (name == null) {
+                            name = fun.group("name");
+                        }
+                        Long address = null;
+                        var platforms = fun.group("platforms");
+                        if (platforms != null) {
+                            var plat = Regexes.GRAB_WIN_ADDRESS.matcher(platforms);
+                            if (plat.find() && Long.parseLong(plat.group("addr"), 16) != 0x9999999) {
+                                address = Long.parseLong(plat.group("addr"), 16);
                             }
+                        }
+                        decls.add(new VirtualDecl(
+                            clsName, name, signature, fun.group(),
+                            Regexes.isCommentedOut(body, fun.start()), address
+                        ));
+                    });
+                }
+            );
+        }
 
-                            // Apply new signature
-                            data.updateFunction(
-                                getCConvName(conv),
-                                bromaRetType,
-                                updateType,
-                                true,
-                                SourceType.ANALYSIS,
-                                bromaParams.toArray(Variable[]::new)
-                            );
+        printfmt("Scanning RTTI...");
+        var rtti = new MsvcRtti(currentProgram);
+        rtti.scan();
+        printfmt(
+            "Found {0} vtables for {1} classes",
+            rtti.vtables.values().stream().mapToInt(List::size).sum(), rtti.vtables.size()
+        );
+
+        var mapper = new MsvcVtableMapper(rtti, declared);
+        for (var clsName : targetClasses) {
+            mapper.resolve(clsName);
+        }
+
+        // Identical functions get folded together by the linker, so if 
+        // multiple functions ended up at the same address, none of them can 
+        // be named after it
+        var claims = new HashMap<Long, HashSet<String>>();
+        for (var slot : mapper.slots) {
+            claims.computeIfAbsent(slot.address(), k -> new HashSet<>())
+                .add(slot.decl().className() + "::" + slot.decl().signature());
+        }
+
+        // If Broma already has an address that doesn't match, then the class's 
+        // declarations are probably out of order
+        final var imageBase = currentProgram.getImageBase().getOffset();
+        var mismatched = new HashSet<String>();
+        for (var slot : mapper.slots) {
+            final var decl = slot.decl();
+            if (decl.address() != null && imageBase + decl.address() != slot.address()) {
+                mismatched.add(decl.className());
+                mapper.addProblem(
+                    decl.className(), "{0} is at 0x{1} in Broma but 0x{2} in the vtable",
+                    decl.name(), Long.toHexString(decl.address()), Long.toHexString(slot.address() - imageBase)
+                );
+            }
+        }
+
+        var folded = 0;
+        var imported = new HashSet<String>();
+        for (var slot : mapper.slots) {
+            final var decl = slot.decl();
+            if (
+                decl.commented() || !targetClasses.contains(decl.className()) ||
+                mismatched.contains(decl.className()) ||
+                !imported.add(decl.className() + "::" + decl.signature())
+            ) {
+                continue;
+            }
+            if (claims.get(slot.address()).size() > 1) {
+                folded += 1;
+                continue;
+            }
+            var fun = Regexes.GRAB_FUNCTION.matcher(decl.declaration());
+            fun.find();
+            // Virtuals are always thiscall
+            importFunction(decl.className(), decl.name(), fun, toAddr(slot.address()), CConv.THISCALL);
+        }
+
+        printfmt("Added {0} functions & updated {1} functions from vtables", importedAddCount, importedUpdateCount);
+        if (folded > 0) {
+            printfmt("Skipped {0} functions that share their address with another function", folded);
+        }
+        if (!mapper.problems.isEmpty()) {
+            printfmt("{0} classes couldn''t be fully mapped:", mapper.problems.size());
+            for (var problem : mapper.problems.entrySet()) {
+                for (var message : problem.getValue()) {
+                    printfmt("    {0}: {1}", problem.getKey(), message);
+                }
+            }
+        }
+    }
+
+    // Identifies a virtual across a class hierarchy, so that overrides can be 
+    // matched to the virtual they override
+    String getVirtualSignature(Matcher fun) {
+        if (fun.group("destructor") != null) {
+            return "~";
+        }
+        return fun.group("name") + "(" + String.join(", ", typeParser.parseParams(fun.group("params"))
+            .stream()
+            .map(p -> p.type().toString())
+            .toArray(String[]::new)
+        ) + ")" + (fun.group("const") != null ? " const" : "");
+    }
+
+    void writeCoverageReport(File bindingsVerDir, List<String> bromas, String platform) throws Exception {
+        final var platformAddrGrab = getPlatformAddrPattern(platform);
+        final var platformName = getPlatformLinkName(platform);
+        final var imageBase = currentProgram.getImageBase();
+
+        // Index every Broma function by its full name; overloads share the same 
+        // key and are told apart by their address
+        var bromaIndex = new HashMap<String, List<Long>>();
+        for (var bro : bromas) {
+            var file = new File(bindingsVerDir.toPath().toString() + "/" + bro);
+            printfmt("Reading {0}...", bro);
+            matchAll(
+                Regexes.GRAB_CLASSES,
+                new String(Files.readAllBytes(file.toPath())),
+                cls -> {
+                    final var clsName = cls.group("name");
+                    final var body = cls.group("body");
+                    matchAll(Regexes.GRAB_FUNCTION, body, fun -> {
+                        if (Regexes.isCommentedOut(body, fun.start())) {
+                            return;
                         }
-                    );
+                        var name = fun.group("destructor");
+                        if (name == null) {
+                            name = fun.group("name");
+                        }
+                        Long offset = null;
+                        var platforms = fun.group("platforms");
+                        if (platforms != null) {
+                            var plat = platformAddrGrab.matcher(platforms);
+                            if (plat.find()) {
+                                offset = Long.parseLong(plat.group("addr"), 16);
+                                // The hardcoded placeholder addr
+                                if (offset == 0x9999999) {
+                                    offset = null;
+                                }
+                            }
+                        }
+                        bromaIndex.computeIfAbsent(clsName + "::" + name, k -> new ArrayList<>()).add(offset);
+                    });
                 }
             );
         }
 
-        printfmt("Added {0} functions & updated {1} functions from Broma", importedAddCount, importedUpdateCount);
+        // Walk every function Ghidra knows about once and join it against the index
+        var covered = new TreeMap<String, Integer>();
+        var totals = new TreeMap<String, Integer>();
+        var missing = new ArrayList<String>();
+        var mismatched = new ArrayList<String>();
+        var addressable = new ArrayList<String>();
+        var seen = new HashSet<String>();
+        for (var fun : currentProgram.getFunctionManager().getFunctions(true)) {
+            final var ns = fun.getParentNamespace();
+            if (ns == null || ns.isGlobal() || fun.isThunk()) {
+                continue;
+            }
+            // Analysis and RTTI recovery put FUN_ functions in classes too, 
+            // but those haven't been named by anyone
+            if (fun.getSymbol().getSource() == SourceType.DEFAULT) {
+                continue;
+            }
+            final var clsName = ns.getName(true);
+            final var fullName = clsName + "::" + fun.getName();
+            final var offset = fun.getEntryPoint().subtract(imageBase);
+            final var entries = bromaIndex.get(fullName);
+
+            totals.merge(clsName, 1, Integer::sum);
+            if (entries == null) {
+                missing.add(MessageFormat.format("{0} (0x{1})", fullName, Long.toHexString(offset)));
+                continue;
+            }
+            seen.add(fullName);
+            if (entries.contains(offset)) {
+                covered.merge(clsName, 1, Integer::sum);
+            }
+            else if (entries.stream().allMatch(e -> e == null)) {
+                addressable.add(MessageFormat.format("{0} (Ghidra 0x{1})", fullName, Long.toHexString(offset)));
+            }
+            else {
+                mismatched.add(MessageFormat.format(
+                    "{0} (Ghidra 0x{1}, Broma {2})",
+                    fullName, Long.toHexString(offset),
+                    String.join(", ", entries.stream()
+                        .filter(e -> e != null)
+                        .map(e -> "0x" + Long.toHexString(e))
+                        .toArray(String[]::new)
+                    )
+                ));
+            }
+        }
+
+        // Broma entries that neither have an address nor are known to Ghidra
+        var unaddressed = new ArrayList<String>();
+        for (var entry : bromaIndex.entrySet()) {
+            if (!seen.contains(entry.getKey()) && entry.getValue().stream().anyMatch(e -> e == null)) {
+                unaddressed.add(entry.getKey());
+            }
+        }
+        missing.sort(null);
+        mismatched.sort(null);
+        addressable.sort(null);
+        unaddressed.sort(null);
+
+        var file = askFile("Save coverage report", "Save");
+        if (file == null) {
+            return;
+        }
+        if (file.exists() && !askYesNo("Overwrite file", file.getName() + " already exists - overwrite it?")) {
+            return;
+        }
+        var writer = new PrintWriter(file, "UTF-8");
+        try {
+            final var totalCovered = covered.values().stream().mapToInt(Integer::intValue).sum();
+            final var total = totals.values().stream().mapToInt(Integer::intValue).sum();
+            writer.println(MessageFormat.format(
+                "Broma coverage of {0} ({1}, {2})",
+                currentProgram.getName(), platform, bindingsVerDir.getName()
+            ));
+            writer.println(MessageFormat.format(
+                "{0} of {1} functions in class namespaces are in Broma with a matching {2} address ({3})",
+                totalCovered, total, platformName, formatPercent(totalCovered, total)
+            ));
+
+            writer.println();
+            writer.println("== Coverage per class ==");
+            for (var entry : totals.entrySet()) {
+                final var count = covered.getOrDefault(entry.getKey(), 0);
+                writer.println(MessageFormat.format(
+                    "{0}: {1}/{2} ({3})",
+                    entry.getKey(), count, entry.getValue(), formatPercent(count, entry.getValue())
+                ));
+            }
+            writeReportSection(writer, "Named in Ghidra but missing from Broma", missing);
+            writeReportSection(writer, "Address in Ghidra differs from Broma", mismatched);
+            writeReportSection(writer, "In Broma without a " + platformName + " address, but known to Ghidra", addressable);
+            writeReportSection(writer, "In Broma without a " + platformName + " address", unaddressed);
+        } finally {
+            writer.close();
+        }
+        printfmt(
+            "Wrote coverage report to {0}: {1} missing, {2} mismatched, {3} addressable",
+            file.toPath(), missing.size(), mismatched.size(), addressable.size()
+        );
+    }
+
+    void writeReportSection(PrintWriter writer, String title, List<String> lines) {
+        writer.println();
+        writer.println(MessageFormat.format("== {0} ({1}) ==", title, lines.size()));
+        for (var line : lines) {
+            writer.println(line);
+        }
+    }
+
+    String formatPercent(int count, int total) {
+        if (total == 0) {
+            return "-";
+        }
+        return String.format("%.1f%%", count * 100.0 / total);
+    }
+
+    Register getRegister(String name) {
+        return registers.computeIfAbsent(name, n -> currentProgram.getRegister(n));
+    }
+
+    VariableStorage[] getStorageTemplate(SignatureShape shape) throws Exception {
+        var storages = storageTemplates.get(shape);
+        if (storages != null) {
+            return storages;
+        }
+        final var slots = shape.slots();
+        var reorderedSlots = new ArrayList<ParamSlot>(slots);
+        // Thanks stable sort <3
+        reorderedSlots.sort((a, b) -> {
+            final var aIs = a.kind() == ParamKind.STRUCT;
+            final var bIs = b.kind() == ParamKind.STRUCT;
+            if (aIs && bIs) return 0;
+            if (aIs) return 1;
+            if (bIs) return -1;
+            return 0;
+        });
+        storages = new VariableStorage[slots.size()];
+        var stackOffset = 0;
+        for (var i = 0; i < slots.size(); i += 1) {
+            final var slot = slots.get(i);
+            if (
+                i < 5 && (
+                    slot.kind() == ParamKind.FLOAT ||
+                    slot.kind() == ParamKind.DOUBLE ||
+                    slot.kind() == ParamKind.OTHER_FLOAT
+                )
+            ) {
+                // (p)rocessor (reg)ister
+                String preg = null;
+                if (slot.kind() == ParamKind.FLOAT) {
+                    preg = "XMM" + i + "_Da";
+                }
+                else if (slot.kind() == ParamKind.DOUBLE) {
+                    preg = "XMM" + i + "_Qa";
+                }
+                else {
+                    throw new Error(
+                        "Parameter " + i + " has a floating-point type of size " + slot.length() +
+                        ", which has an unknown register location"
+                    );
+                }
+                storages[i] = new VariableStorage(currentProgram, getRegister(preg));
+            }
+            else if (i == 0) {
+                storages[i] = new VariableStorage(currentProgram, getRegister("ECX"));
+            }
+            else if (shape.conv() == CConv.OPTCALL && i == 1 && slot.kind() != ParamKind.STRUCT) {
+                storages[i] = new VariableStorage(currentProgram, getRegister("EDX"));
+            }
+            else {
+                storages[i] = new VariableStorage(currentProgram, stackOffset, slot.length());
+                stackOffset += reorderedSlots.get(i).length();
+            }
+        }
+        storageTemplates.put(shape, storages);
+        return storages;
     }
 
     void printfmt(String fmt, Object... args) {
@@ -457,13 +1585,14 @@ public class SyncBromaScript extends GhidraScript {
     }
 
     List<String> getPlatformOptions() {
-        return List.of("Windows", "Mac");
+        return List.of("Windows", "Mac", "Android32", "Android64");
     }
 
     String getPlatformLinkName(String platform) {
         switch (platform) {
             case "Windows": return "win";
             case "Mac": return "mac";
+            case "Android32": case "Android64": return "android";
             default: throw new Error(
                 "Invalid platform option - SyncBromaScript.getPlatformLinkName " + 
                 "should be updated to match SyncBromaScript.getPlatformOptions"
@@ -475,6 +1604,8 @@ public class SyncBromaScript extends GhidraScript {
         switch (platform) {
             case "Windows": return Regexes.GRAB_WIN_ADDRESS;
             case "Mac": return Regexes.GRAB_MAC_ADDRESS;
+            case "Android32": return Regexes.GRAB_ANDROID32_ADDRESS;
+            case "Android64": return Regexes.GRAB_ANDROID64_ADDRESS;
             default: throw new Error(
                 "Invalid platform option - SyncBromaScript.getPlatformAddrPattern " + 
                 "should be updated to match SyncBromaScript.getPlatformOptions"
@@ -482,6 +1613,10 @@ public class SyncBromaScript extends GhidraScript {
         }
     }
 
+    boolean isAndroid(String platform) {
+        return platform.startsWith("Android");
+    }
+
     CConv getCallingConvention(String platform, Boolean link, Matcher funMatcher) {
         if (!platform.equals("Windows")) {
             return null;
@@ -540,82 +1675,191 @@ public class SyncBromaScript extends GhidraScript {
     }
 
     DataType parseType(String string) {
-        final var manager = currentProgram.getDataTypeManager();
-        var matcher = Regexes.GRAB_TYPE.matcher(string);
-        if (!matcher.find()) {
-            throw new Error(
-                "Unable to match data type \"" + string + "\" with regex " + Regexes.GRAB_TYPE.pattern()
-            );
+        return resolveType(typeParser.parse(string));
+    }
+
+    DataType resolveType(TypeExpr expr) {
+        final var indirections = expr.pointers() + expr.references();
+        var type = resolveTypeName(expr.base(), indirections > 0);
+
+        // Constants don't exist in Ghidra lol
+        // Make the type a pointer if it's a ptr or ref, including multi-level pointers like int**
+        for (var i = 0; i < indirections; i++) {
+            type = new PointerDataType(type);
         }
+        return type;
+    }
 
-        // Get the name and category
-        var nameIter = Arrays.asList(matcher.group("name").split("::")).listIterator();
-        String name = null;
-        DataTypePath typePath = null;
-        CategoryPath category = new CategoryPath("/");
-        while (nameIter.hasNext()) {
-            var ns = nameIter.next();
-            if (nameIter.hasNext()) {
-                category = category.extend(ns);
-                if (manager.getCategory(category) == null) {
-                    manager.createCategory(category);
-                }
-            }
-            else {
-                // Add template parameters to the name
-                var templates = matcher.group("template");
-                if (templates != null) {
-                    ns += templates;
-                }
-                name = ns;
-                typePath = new DataTypePath(category, ns);
-            }
+    DataType resolveTypeName(TypeName typeName, boolean indirect) {
+        // Every distinct type (including template instantiations) is only 
+        // looked up or created in the DataTypeManager once
+        var type = resolvedTypes.get(typeName);
+        if (type != null) {
+            return type;
         }
-        if (name == null) {
-            throw new Error("Data type doesn't have a name - this is an error in the SyncBromaScript GRAB_TYPE regex");
+        if (typeName.templates().isEmpty()) {
+            type = BUILTIN_TYPES.get(typeName.name());
         }
+        if (type == null) {
+            type = findOrCreateType(typeName, indirect);
+        }
+        resolvedTypes.put(typeName, type);
+        return type;
+    }
+
+    DataType findOrCreateType(TypeName typeName, boolean indirect) {
+        final var manager = currentProgram.getDataTypeManager();
+        final var category = createCategory(manager, typeName);
+        final var typePath = new DataTypePath(category, typeName.leafName());
 
         // Try to get this type
         var type = manager.getDataType(typePath);
+        if (type == null && typeArchive != null) {
+            var archived = typeArchive.getDataType(typePath);
+            if (archived != null) {
+                // Keeps the type linked to the archive
+                type = manager.resolve(archived, DataTypeConflictHandler.DEFAULT_HANDLER);
+            }
+        }
         if (type == null) {
             // Try to guess the type; if the guess is wrong, the user can fix it manually
             // If the type is passed without pointer or reference, assume it's an enum
-            if (matcher.group("ptr") == null && matcher.group("ref") == null) {
-                type = manager.addDataType(
-                    new EnumDataType(category, name, new IntegerDataType().getLength()),
-                    DataTypeConflictHandler.DEFAULT_HANDLER
-                );
-                printfmt("Created new type {0}, assumed it's an enum", typePath);
-            }
             // Otherwise it's probably a struct
-            else {
-                type = manager.addDataType(
-                    new StructureDataType(category, name, 0),
-                    DataTypeConflictHandler.DEFAULT_HANDLER
-                );
-                printfmt("Created new type {0}, assumed it's a struct", typePath);
+            type = createGuessedType(manager, category, typeName.leafName(), indirect);
+            printfmt("Created new type {0}, assumed it''s {1}", typePath, indirect ? "a struct" : "an enum");
+        }
+        return type;
+    }
+
+    CategoryPath createCategory(DataTypeManager manager, TypeName typeName) {
+        CategoryPath category = new CategoryPath("/");
+        for (var ns : typeName.namespaces()) {
+            category = category.extend(ns);
+            if (manager.getCategory(category) == null) {
+                manager.createCategory(category);
+            }
+        }
+        return category;
+    }
+
+    DataType createGuessedType(DataTypeManager manager, CategoryPath category, String name, boolean struct) {
+        if (struct) {
+            return manager.addDataType(
+                new StructureDataType(category, name, 0, manager),
+                DataTypeConflictHandler.DEFAULT_HANDLER
+            );
+        }
+        return manager.addDataType(
+            new EnumDataType(category, name, new IntegerDataType().getLength(), manager),
+            DataTypeConflictHandler.DEFAULT_HANDLER
+        );
+    }
+
+    void collectTypeNames(TypeExpr expr, HashSet<TypeName> names, HashSet<TypeName> indirect) {
+        if (expr.pointers() + expr.references() > 0) {
+            indirect.add(expr.base());
+        }
+        if (names.add(expr.base())) {
+            for (var template : expr.base().templates()) {
+                collectTypeNames(template, names, indirect);
             }
         }
+    }
 
-        // Apply any modifiers
+    void writeTypeArchive(File bindingsVerDir, List<String> bromas) throws Exception {
+        // Collect every type used in the bindings first, so that all of them 
+        // can be created in one go and we know how each one is used
+        var exprs = new HashSet<TypeExpr>();
+        var classes = new HashSet<String>();
+        for (var bro : bromas) {
+            var file = new File(bindingsVerDir.toPath().toString() + "/" + bro);
+            printfmt("Reading {0}...", bro);
+            matchAll(
+                Regexes.GRAB_CLASSES,
+                new String(Files.readAllBytes(file.toPath())),
+                cls -> {
+                    final var body = cls.group("body");
+                    classes.add(cls.group("name"));
+                    exprs.add(typeParser.parse(cls.group("name") + "*"));
+                    matchAll(Regexes.GRAB_FUNCTION, body, fun -> {
+                        if (Regexes.isCommentedOut(body, fun.start())) {
+                            return;
+                        }
+                        if (fun.group("return") != null) {
+                            exprs.add(typeParser.parse(fun.group("return")));
+                        }
+                        for (var param : typeParser.parseParams(fun.group("params"))) {
+                            exprs.add(param.type());
+                        }
+                    });
+                }
+            );
+        }
+        var names = new HashSet<TypeName>();
+        var indirect = new HashSet<TypeName>();
+        for (var expr : exprs) {
+            collectTypeNames(expr, names, indirect);
+        }
+        var sortedNames = new ArrayList<TypeName>(names);
+        sortedNames.sort((a, b) -> a.toString().compareTo(b.toString()));
 
-        if (matcher.group("lconst") != null || matcher.group("rconst") != null) {
-            // Constants don't exist in Ghidra lol
+        var file = askFile("Save type archive", "Save");
+        if (file == null) {
+            return;
         }
-        // Make the type a pointer if it's a ptr or ref
-        if (matcher.group("ptr") != null) {
-            // Make sure to support multi-level pointers like int**
-            for (var i = 0; i < matcher.group("ptr").length(); i++) {
-                type = new PointerDataType(type);
+        // Ghidra only opens archives with the .gdt extension
+        if (!file.getName().endsWith(FileDataTypeManager.SUFFIX)) {
+            file = new File(file.getParentFile(), file.getName() + FileDataTypeManager.SUFFIX);
+        }
+        if (file.exists()) {
+            if (!askYesNo("Overwrite file", file.getName() + " already exists - overwrite it?")) {
+                return;
             }
+            Files.delete(file.toPath());
         }
-        if (matcher.group("ref") != null) {
-            for (var i = 0; i < matcher.group("ref").length(); i++) {
-                type = new PointerDataType(type);
+
+        var archive = FileDataTypeManager.createFileArchive(file);
+        try {
+            var transaction = archive.startTransaction("Import types from Broma");
+            try {
+                var types = new HashMap<TypeName, DataType>();
+                for (var name : sortedNames) {
+                    var type = name.templates().isEmpty() ? BUILTIN_TYPES.get(name.name()) : null;
+                    if (type == null) {
+                        // Classes and template instantiations are structs, anything else 
+                        // is an enum unless it's only ever used through a pointer
+                        type = createGuessedType(
+                            archive, createCategory(archive, name), name.leafName(),
+                            classes.contains(name.name()) || !name.templates().isEmpty() || indirect.contains(name)
+                        );
+                    }
+                    types.put(name, type);
+                }
+                var pointerCount = 0;
+                for (var expr : exprs) {
+                    var type = types.get(expr.base());
+                    for (var i = 0; i < expr.pointers() + expr.references(); i++) {
+                        type = archive.resolve(new PointerDataType(type, archive), DataTypeConflictHandler.DEFAULT_HANDLER);
+                        pointerCount += 1;
+                    }
+                }
+                printfmt("Created {0} types and {1} pointers", names.size(), pointerCount);
+            } finally {
+                archive.endTransaction(transaction, true);
             }
+            archive.save();
+        } finally {
+            archive.close();
         }
+        printfmt("Wrote type archive to {0}", file.toPath());
+    }
 
-        return type;
+    @Override
+    public void cleanup(boolean success) {
+        if (typeArchive != null) {
+            typeArchive.close();
+        }
+        super.cleanup(success);
     }
 
     <A, B> Boolean askBromaConflict(String in, String what, A broma, B ghidra) throws Exception {
@@ -0,0 +1,354 @@
+package broma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Generates Itanium-mangled names for Broma functions, since Android bindings 
+// are linked by symbol instead of having addresses
+public class ItaniumMangler {
+    static final Map<String, String> BUILTINS = Map.ofEntries(
+        Map.entry("void", "v"),
+        Map.entry("bool", "b"),
+        Map.entry("char", "c"),
+        Map.entry("signed char", "a"),
+        Map.entry("unsigned char", "h"),
+        Map.entry("short", "s"),
+        Map.entry("unsigned short", "t"),
+        Map.entry("int", "i"),
+        Map.entry("unsigned int", "j"),
+        Map.entry("long", "l"),
+        Map.entry("unsigned long", "m"),
+        Map.entry("long long", "x"),
+        Map.entry("unsigned long long", "y"),
+        Map.entry("float", "f"),
+        Map.entry("double", "d"),
+        Map.entry("long double", "e")
+    );
+    // Typedefs mangle as the type they name
+    static final Map<String, String> TYPEDEFS = Map.ofEntries(
+        Map.entry("int8_t", "signed char"),
+        Map.entry("uint8_t", "unsigned char"),
+        Map.entry("int16_t", "short"),
+        Map.entry("uint16_t", "unsigned short"),
+        Map.entry("int32_t", "int"),
+        Map.entry("uint32_t", "unsigned int"),
+        Map.entry("cocos2d::ccColor3B", "cocos2d::_ccColor3B"),
+        Map.entry("cocos2d::ccColor4B", "cocos2d::_ccColor4B"),
+        Map.entry("cocos2d::ccColor4F", "cocos2d::_ccColor4F"),
+        Map.entry("cocos2d::ccHSVValue", "cocos2d::_ccHSVValue"),
+        Map.entry("cocos2d::ccBlendFunc", "cocos2d::_ccBlendFunc"),
+        Map.entry("cocos2d::ccVertex2F", "cocos2d::_ccVertex2F"),
+        Map.entry("cocos2d::ccVertex3F", "cocos2d::_ccVertex3F"),
+        Map.entry("cocos2d::ccTex2F", "cocos2d::_ccTex2F")
+    );
+    // Cocos selector typedefs are pointers to members of CCObject
+    static final Map<String, String> SELECTORS = Map.ofEntries(
+        Map.entry("cocos2d::SEL_SCHEDULE", "void(float)"),
+        Map.entry("cocos2d::SEL_CallFunc", "void()"),
+        Map.entry("cocos2d::SEL_CallFuncN", "void(cocos2d::CCNode*)"),
+        Map.entry("cocos2d::SEL_CallFuncND", "void(cocos2d::CCNode*, void*)"),
+        Map.entry("cocos2d::SEL_CallFuncO", "void(cocos2d::CCObject*)"),
+        Map.entry("cocos2d::SEL_MenuHandler", "void(cocos2d::CCObject*)"),
+        Map.entry("cocos2d::SEL_EventHandler", "void(cocos2d::CCEvent*)"),
+        Map.entry("cocos2d::SEL_Compare", "int(cocos2d::CCObject*)")
+    );
+
+    static class UnsupportedTypeException extends Exception {
+        UnsupportedTypeException(String what) {
+            super(what);
+        }
+    }
+
+    // The encoding of a class's nested name prefix and the substitutions it 
+    // adds, which are the same for every function in that class
+    record ClassPrefix(String encoded, List<String> substitutions) {}
+
+    final boolean is64;
+    final TypeParser typeParser = new TypeParser();
+    HashMap<String, ClassPrefix> classPrefixes = new HashMap<>();
+    HashMap<String, String> sourceNames = new HashMap<>();
+
+    // Substitution candidates of the name currently being mangled
+    ArrayList<String> substitutions = new ArrayList<>();
+
+    public ItaniumMangler(boolean is64) {
+        this.is64 = is64;
+    }
+
+    // Returns the possible mangled names of a function, or nothing if it uses 
+    // something that can't be mangled
+    public List<String> mangleFunction(String clsName, String name, List<TypeExpr> params, boolean isConst) {
+        List<String> names;
+        if (name.startsWith("~")) {
+            // Base object, complete object and deleting destructors
+            names = List.of("D2", "D1", "D0");
+        }
+        else if (name.startsWith("operator")) {
+            return List.of();
+        }
+        else {
+            names = List.of(sourceName(name));
+        }
+        try {
+            var prefix = classPrefixes.get(clsName);
+            if (prefix == null) {
+                substitutions = new ArrayList<>();
+                var encoded = manglePrefix(clsName.split("::"));
+                prefix = new ClassPrefix(encoded, List.copyOf(substitutions));
+                classPrefixes.put(clsName, prefix);
+            }
+            substitutions = new ArrayList<>(prefix.substitutions());
+            var encodedParams = new StringBuilder();
+            for (var param : params) {
+                encodedParams.append(mangleType(expand(param), true));
+            }
+            if (params.isEmpty()) {
+                encodedParams.append("v");
+            }
+            var result = new ArrayList<String>();
+            for (var unqualified : names) {
+                result.add("_ZN" + (isConst ? "K" : "") + prefix.encoded() + unqualified + "E" + encodedParams);
+            }
+            return result;
+        }
+        catch (UnsupportedTypeException e) {
+            return List.of();
+        }
+    }
+
+    String sourceName(String name) {
+        return sourceNames.computeIfAbsent(name, n -> n.length() + n);
+    }
+
+    String substitution(int index) {
+        if (index == 0) {
+            return "S_";
+        }
+        return "S" + Integer.toString(index - 1, 36).toUpperCase() + "_";
+    }
+
+    void addSubstitution(String key) {
+        if (!substitutions.contains(key)) {
+            substitutions.add(key);
+        }
+    }
+
+    // Mangles the parts of a nested name, using and adding substitutions for 
+    // every prefix of it
+    String manglePrefix(String[] parts) throws UnsupportedTypeException {
+        var result = new StringBuilder();
+        var start = 0;
+        // Use the longest prefix that's already been seen
+        for (var i = parts.length; i > 0; i--) {
+            var index = substitutions.indexOf(String.join("::", Arrays.copyOf(parts, i)));
+            if (index != -1) {
+                result.append(substitution(index));
+                start = i;
+                break;
+            }
+        }
+        if (start == 0 && parts[0].equals("std")) {
+            result.append("St");
+            start = 1;
+        }
+        for (var i = start; i < parts.length; i++) {
+            result.append(sourceName(parts[i]));
+            addSubstitution(String.join("::", Arrays.copyOf(parts, i + 1)));
+        }
+        return result.toString();
+    }
+
+    // Rewrites Broma's names for types into what they actually are in the binary
+    TypeExpr expand(TypeExpr expr) throws UnsupportedTypeException {
+        return new TypeExpr(expand(expr.base()), expr.isConst(), expr.pointers(), expr.references());
+    }
+
+    TypeName expand(TypeName name) throws UnsupportedTypeException {
+        var args = new ArrayList<TypeExpr>();
+        for (var template : name.templates()) {
+            args.add(expand(template));
+        }
+        switch (name.name()) {
+            case "size_t": return new TypeName(is64 ? "unsigned long" : "unsigned int", List.of());
+            case "int64_t": return new TypeName(is64 ? "long" : "long long", List.of());
+            case "uint64_t": return new TypeName(is64 ? "unsigned long" : "unsigned long long", List.of());
+            case "gd::string": return new TypeName("std::string", List.of());
+            // gd:: containers are GNU std:: containers, with all of their 
+            // default template arguments spelled out
+            case "gd::vector": return new TypeName("std::vector", List.of(args.get(0), allocator(args.get(0))));
+            case "gd::set": return new TypeName("std::set", List.of(args.get(0), templated("std::less", args.get(0)), allocator(args.get(0))));
+            case "gd::map": return new TypeName("std::map", List.of(
+                args.get(0), args.get(1), templated("std::less", args.get(0)), allocator(pair(args.get(0), args.get(1)))
+            ));
+            case "gd::unordered_set": return new TypeName("std::unordered_set", List.of(
+                args.get(0), templated("std::hash", args.get(0)), templated("std::equal_to", args.get(0)), allocator(args.get(0))
+            ));
+            case "gd::unordered_map": return new TypeName("std::unordered_map", List.of(
+                args.get(0), args.get(1), templated("std::hash", args.get(0)), templated("std::equal_to", args.get(0)),
+                allocator(pair(args.get(0), args.get(1)))
+            ));
+            case "gd::pair": return new TypeName("std::pair", args);
+        }
+        if (name.name().startsWith("gd::")) {
+            throw new UnsupportedTypeException(name.toString());
+        }
+        var typedef = TYPEDEFS.get(name.name());
+        if (typedef != null) {
+            return new TypeName(typedef, args);
+        }
+        return new TypeName(name.name(), args);
+    }
+
+    static TypeExpr templated(String name, TypeExpr arg) {
+        return new TypeExpr(new TypeName(name, List.of(arg)), false, 0, 0);
+    }
+
+    static TypeExpr allocator(TypeExpr arg) {
+        return templated("std::allocator", arg);
+    }
+
+    static TypeExpr pair(TypeExpr key, TypeExpr value) {
+        var constKey = new TypeExpr(key.base(), key.pointers() + key.references() == 0 || key.isConst(), key.pointers(), key.references());
+        return new TypeExpr(new TypeName("std::pair", List.of(constKey, value)), false, 0, 0);
+    }
+
+    // Top-level const is dropped from function parameters, but not from 
+    // template arguments
+    String mangleType(TypeExpr expr, boolean isParam) throws UnsupportedTypeException {
+        final var indirections = expr.pointers() + expr.references();
+        if (indirections == 0) {
+            if (expr.isConst() && !isParam) {
+                return mangleQualified(expr.base(), expr.toString());
+            }
+            return mangleName(expr.base());
+        }
+        var key = expr.toString();
+        var index = substitutions.indexOf(key);
+        if (index != -1) {
+            return substitution(index);
+        }
+        String result;
+        if (expr.references() > 0) {
+            var inner = new TypeExpr(expr.base(), expr.isConst(), expr.pointers(), 0);
+            // `&&` is an rvalue reference
+            result = (expr.references() == 2 ? "O" : "R") + mangleType(inner, false);
+        }
+        else {
+            var inner = new TypeExpr(expr.base(), expr.isConst(), expr.pointers() - 1, 0);
+            result = "P" + mangleType(inner, false);
+        }
+        addSubstitution(key);
+        return result;
+    }
+
+    String mangleQualified(TypeName name, String key) throws UnsupportedTypeException {
+        var index = substitutions.indexOf(key);
+        if (index != -1) {
+            return substitution(index);
+        }
+        var result = "K" + mangleName(name);
+        addSubstitution(key);
+        return result;
+    }
+
+    String mangleName(TypeName name) throws UnsupportedTypeException {
+        var builtin = name.templates().isEmpty() ? BUILTINS.get(name.name()) : null;
+        if (builtin != null) {
+            return builtin;
+        }
+        // Numeric template arguments are only handled for std::array, where 
+        // the type of the literal is known
+        if (name.templates().isEmpty() && name.name().matches("-?\\d+")) {
+            throw new UnsupportedTypeException("template argument " + name.name());
+        }
+        var key = name.toString();
+        var index = substitutions.indexOf(key);
+        if (index != -1) {
+            return substitution(index);
+        }
+        if (name.name().equals("std::string")) {
+            return "Ss";
+        }
+        var selector = SELECTORS.get(name.name());
+        if (selector != null) {
+            return mangleSelector(selector);
+        }
+
+        var parts = name.name().split("::");
+        var result = new StringBuilder();
+        if (name.name().equals("std::allocator")) {
+            result.append("Sa");
+        }
+        else if (parts.length == 1 || (parts.length == 2 && parts[0].equals("std"))) {
+            // Unscoped names don't need N...E
+            // The template name is a substitution of its own, so another 
+            // instantiation of the same template reuses it
+            var templateIndex = name.templates().isEmpty() ? -1 : substitutions.indexOf(name.name());
+            if (templateIndex != -1) {
+                result.append(substitution(templateIndex));
+            }
+            else {
+                result.append(parts.length == 2 ? "St" : "").append(sourceName(parts[parts.length - 1]));
+                if (!name.templates().isEmpty()) {
+                    addSubstitution(name.name());
+                }
+            }
+        }
+        else {
+            result.append("N").append(manglePrefix(parts));
+        }
+        if (!name.templates().isEmpty()) {
+            result.append("I");
+            for (var template : name.templates()) {
+                var size = template.base().name();
+                if (name.name().equals("std::array") && template.base().templates().isEmpty() && size.matches("\\d+")) {
+                    // The size is a size_t
+                    result.append(is64 ? "Lm" : "Lj").append(size).append("E");
+                    continue;
+                }
+                result.append(mangleType(template, false));
+            }
+            result.append("E");
+        }
+        if (result.charAt(0) == 'N') {
+            result.append("E");
+        }
+        addSubstitution(key);
+        return result.toString();
+    }
+
+    String mangleSelector(String signature) throws UnsupportedTypeException {
+        // Selectors with the same signature are the same type
+        var key = "cocos2d::CCObject::*" + signature;
+        var index = substitutions.indexOf(key);
+        if (index != -1) {
+            return substitution(index);
+        }
+        // The class comes before the function type, both in the name and in 
+        // the order substitutions are added
+        var result = new StringBuilder("M");
+        result.append(mangleName(new TypeName("cocos2d::CCObject", List.of())));
+        var functionIndex = substitutions.indexOf(signature);
+        if (functionIndex != -1) {
+            result.append(substitution(functionIndex));
+        }
+        else {
+            var open = signature.indexOf('(');
+            result.append("F").append(BUILTINS.get(signature.substring(0, open)));
+            var params = typeParser.parseParams(signature.substring(open + 1, signature.length() - 1));
+            for (var param : params) {
+                result.append(mangleType(expand(param.type()), true));
+            }
+            if (params.isEmpty()) {
+                result.append("v");
+            }
+            result.append("E");
+            addSubstitution(signature);
+        }
+        addSubstitution(key);
+        return result.toString();
+    }
+}
@@ -0,0 +1,3 @@
+package broma;
+
+public record Param(TypeExpr type, String name) {}
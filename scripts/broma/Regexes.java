@@ -0,0 +1,80 @@
+package broma;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+public class Regexes {
+    static final Pattern GRAB_NAMED_GROUP = Pattern.compile("(?<=\\(\\?)<\\w+>", 0);
+    
+    static final<T> String removeNamedGroups(T pattern) {
+        return GRAB_NAMED_GROUP.matcher(pattern.toString()).replaceAll(":");
+    }
+    static final<T> String formatRegex(String fmt, T... args) {
+        return MessageFormat.format(
+            fmt,
+            Arrays.asList(args).stream().map(p -> removeNamedGroups(p)).toArray()
+        );
+    }
+
+    public static final Pattern GRAB_LINK_ATTR = Pattern.compile(
+        "link\\((?<platforms>.*?)\\)",
+        Pattern.DOTALL
+    );
+    public static final Pattern GRAB_CLASSES = Pattern.compile(
+        // Grab attributes
+        "(?<attrs>\\[\\[.*?\\]\\]\\s*)?" + 
+        // Grab name
+        "class (?<name>(?:\\w+::)*\\w+)\\s+(?::.*?)?" + 
+        // Grab body (assuming closing brace is on its own line without any preceding whitespace)
+        "\\{(?<body>.*?)^\\}",
+        Pattern.DOTALL | Pattern.MULTILINE
+    );
+    // Only used to find where a type is in a declaration; the type itself is 
+    // parsed by TypeParser, since regexes can't match nested templates of any depth
+    public static final Pattern GRAB_TYPE = Pattern.compile(
+        "(?:const\\s+)?(?:(?:unsigned|signed|long|short)\\s+)*(?:\\w+::)*\\w+(?:\\s*<[\\w\\s:<>,*&]*?>)?(?:\\s+const\\b)?(?:\\s*[*&](?:\\s*const\\b)?)*",
+        Pattern.DOTALL
+    );
+    public static final Pattern GRAB_FUNCTION = Pattern.compile(
+        formatRegex(
+            // Must match start of line (MULTILINE flag required) - also requires that the 
+            // function not be intended more than 4 spaces or a single tab
+            // "(?<=^(?:(?: {0,4})|\\t))" + 
+            // Get the dispatch modifier keyword if one is defined
+            "(?<dispatch>(?:inline|virtual|static|callback)\\s+)?" +
+            // Grab the return type and name of the function, or the name if it's a destructor
+            "(?:(?:(?<return>{0})\\s+(?<name>\\w+))|(?<destructor>~\\w+))" + 
+            // Grab the parameters
+            "\\((?<params>[\\w\\s:<>,*&]*)\\)" +
+            // Grab const for member functions
+            "(?<const>\\s*const\\b)?" +
+            // Grab the platforms
+            "(?:\\s*=\\s*(?<platforms>(?:[a-z]+\\s+0x[0-9a-fA-F]+\\s*,?\\s*)+))?",
+            GRAB_TYPE
+        ),
+        Pattern.DOTALL | Pattern.MULTILINE
+    );
+    public static final Pattern GRAB_WIN_ADDRESS = Pattern.compile(
+        "win\\s+0x(?<addr>[0-9a-fA-F]+)",
+        Pattern.DOTALL
+    );
+    public static final Pattern GRAB_MAC_ADDRESS = Pattern.compile(
+        "mac\\s+0x(?<addr>[0-9a-fA-F]+)",
+        Pattern.DOTALL
+    );
+    public static final Pattern GRAB_ANDROID32_ADDRESS = Pattern.compile(
+        "android32\\s+0x(?<addr>[0-9a-fA-F]+)",
+        Pattern.DOTALL
+    );
+    public static final Pattern GRAB_ANDROID64_ADDRESS = Pattern.compile(
+        "android64\\s+0x(?<addr>[0-9a-fA-F]+)",
+        Pattern.DOTALL
+    );
+
+    // Whether the match at `index` is on a line that's been commented out
+    public static boolean isCommentedOut(String text, int index) {
+        final var lineStart = text.lastIndexOf('\n', index - 1) + 1;
+        return text.substring(lineStart, index).contains("//");
+    }
+}
@@ -0,0 +1,9 @@
+package broma;
+
+// A full type expression, like `gd::map<gd::string, gd::vector<cocos2d::CCPoint>> const&`
+public record TypeExpr(TypeName base, boolean isConst, int pointers, int references) {
+    @Override
+    public String toString() {
+        return base.toString() + (isConst ? " const" : "") + "*".repeat(pointers) + "&".repeat(references);
+    }
+}
@@ -0,0 +1,31 @@
+package broma;
+
+import java.util.Arrays;
+import java.util.List;
+
+// The name of a type along with its template arguments, like `gd::vector<int>`
+public record TypeName(String name, List<TypeExpr> templates) {
+    public List<String> namespaces() {
+        var parts = Arrays.asList(name.split("::"));
+        return parts.subList(0, parts.size() - 1);
+    }
+
+    // The name without namespaces but with template arguments, which is what 
+    // the type is called in Ghidra
+    public String leafName() {
+        var parts = name.split("::");
+        return parts[parts.length - 1] + templateArgs();
+    }
+
+    public String templateArgs() {
+        if (templates.isEmpty()) {
+            return "";
+        }
+        return "<" + String.join(", ", templates.stream().map(t -> t.toString()).toArray(String[]::new)) + ">";
+    }
+
+    @Override
+    public String toString() {
+        return name + templateArgs();
+    }
+}
@@ -0,0 +1,193 @@
+package broma;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+// Parses Broma type expressions with templates nested to any depth. Parsed 
+// types are interned, so identical types (even if spelled with different 
+// whitespace) are the same TypeName object
+public class TypeParser {
+    static final Set<String> BUILTIN_MODIFIERS = Set.of("unsigned", "signed", "long", "short");
+    static final Set<String> BUILTIN_PARTS = Set.of("unsigned", "signed", "long", "short", "int", "char", "double");
+    static final Set<String> ELABORATED_KEYWORDS = Set.of("struct", "class", "enum", "typename");
+
+    HashMap<TypeName, TypeName> names = new HashMap<>();
+    HashMap<String, TypeExpr> parsed = new HashMap<>();
+    String text;
+    int pos;
+
+    public TypeExpr parse(String string) {
+        var cached = parsed.get(string);
+        if (cached != null) {
+            return cached;
+        }
+        begin(string);
+        var result = parseTypeExpr();
+        end();
+        parsed.put(string, result);
+        return result;
+    }
+
+    public List<Param> parseParams(String string) {
+        var result = new ArrayList<Param>();
+        begin(string);
+        skipSpace();
+        while (pos < text.length()) {
+            var type = parseTypeExpr();
+            skipSpace();
+            String name = null;
+            if (pos < text.length() && isWordChar(text.charAt(pos))) {
+                name = readWord();
+                skipSpace();
+            }
+            result.add(new Param(type, name));
+            if (!accept(",")) {
+                break;
+            }
+            skipSpace();
+        }
+        end();
+        return result;
+    }
+
+    void begin(String string) {
+        text = string;
+        pos = 0;
+    }
+
+    void end() {
+        skipSpace();
+        if (pos != text.length()) {
+            throw new Error("Unexpected \"" + text.substring(pos) + "\" in type \"" + text + "\"");
+        }
+    }
+
+    TypeExpr parseTypeExpr() {
+        skipSpace();
+        var isConst = acceptWord("const");
+        while (ELABORATED_KEYWORDS.contains(peekWord())) {
+            readWord();
+            skipSpace();
+        }
+        var base = parseTypeName();
+        var pointers = 0;
+        var references = 0;
+        while (true) {
+            skipSpace();
+            if (acceptWord("const")) {
+                isConst = true;
+            }
+            else if (accept("*")) {
+                pointers += 1;
+            }
+            else if (accept("&")) {
+                references += 1;
+            }
+            else {
+                break;
+            }
+        }
+        return new TypeExpr(base, isConst, pointers, references);
+    }
+
+    TypeName parseTypeName() {
+        skipSpace();
+        var name = readWord();
+        if (BUILTIN_MODIFIERS.contains(name)) {
+            // Multi-word builtins like `unsigned long long`
+            var words = new ArrayList<String>(List.of(name));
+            while (BUILTIN_PARTS.contains(peekWord())) {
+                words.add(readWord());
+            }
+            name = normalizeBuiltin(words);
+        }
+        else {
+            while (accept("::")) {
+                name += "::" + readWord();
+            }
+        }
+        var templates = new ArrayList<TypeExpr>();
+        skipSpace();
+        if (accept("<")) {
+            do {
+                templates.add(parseTypeExpr());
+                skipSpace();
+            } while (accept(","));
+            if (!accept(">")) {
+                throw new Error("Unclosed template arguments in type \"" + text + "\"");
+            }
+        }
+        var result = new TypeName(name, List.copyOf(templates));
+        var interned = names.putIfAbsent(result, result);
+        return interned != null ? interned : result;
+    }
+
+    static String normalizeBuiltin(List<String> words) {
+        // `signed` and `int` are implied when there's another word
+        var parts = new ArrayList<String>(words);
+        parts.remove("signed");
+        if (parts.size() > 1 || parts.isEmpty()) {
+            parts.remove("int");
+        }
+        if (parts.isEmpty() || parts.equals(List.of("unsigned"))) {
+            parts.add("int");
+        }
+        if (words.contains("signed") && parts.equals(List.of("char"))) {
+            return "signed char";
+        }
+        return String.join(" ", parts);
+    }
+
+    void skipSpace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos += 1;
+        }
+    }
+
+    boolean accept(String token) {
+        skipSpace();
+        if (text.startsWith(token, pos)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    boolean acceptWord(String word) {
+        if (peekWord().equals(word)) {
+            readWord();
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    String peekWord() {
+        var start = pos;
+        skipSpace();
+        var end = pos;
+        while (end < text.length() && isWordChar(text.charAt(end))) {
+            end += 1;
+        }
+        var word = text.substring(pos, end);
+        pos = start;
+        return word;
+    }
+
+    String readWord() {
+        skipSpace();
+        var start = pos;
+        while (pos < text.length() && isWordChar(text.charAt(pos))) {
+            pos += 1;
+        }
+        if (start == pos) {
+            throw new Error("Expected a name at \"" + text.substring(pos) + "\" in type \"" + text + "\"");
+        }
+        return text.substring(start, pos);
+    }
+}
@@ -1,4 +1,5 @@
 import { readFileSync, writeFileSync } from 'node:fs';
+import { loadVirtuals } from './virtuals.mjs';
 
 if (process.argv.length < 4) {
     console.error("usage: node generate.mjs <android symbols> <cocos symbols>");
@@ -31,11 +32,8 @@ cocosVirtuals['applicationDidEnterBackground()'] = 'void';
 cocosVirtuals['applicationWillEnterForeground()'] = 'void';
 
 // assumes virtuals.json is in the same directory
-const virtualsTable = JSON.parse(readFileSync('virtuals.json').toString());
 // normalize all the function signatures
-for (let name in virtualsTable) {
-    virtualsTable[name] = virtualsTable[name].map(arr => arr.map(cleanFunctionSig));
-}
+const virtualsTable = loadVirtuals('virtuals.json', { mapSignature: cleanFunctionSig });
 
 const classes = {
     'GeometryDash.bro': {},
@@ -0,0 +1,64 @@
+import { readFileSync } from 'node:fs';
+
+/**
+ * Loads a virtuals.json dump, in either the compact format written by 
+ * DumpVirtuals or the older format of plain signature arrays. Returns an 
+ * object from class name to its vtables, where each class's vtables are only 
+ * expanded when they're first accessed
+ * @param {string} path 
+ * @param {{ mapSignature?: (sig: string) => string }} options mapSignature is 
+ * applied once to every distinct signature
+ * @returns {Record<string, string[][]>}
+ */
+export function loadVirtuals(path, { mapSignature = sig => sig } = {}) {
+    const json = JSON.parse(readFileSync(path).toString());
+
+    if (!Array.isArray(json.strings)) {
+        for (let name in json) {
+            json[name] = json[name].map(arr => arr.map(mapSignature));
+        }
+        return json;
+    }
+
+    const strings = json.strings.map(mapSignature);
+    // tables are cached on their own, since classes can refer to each other 
+    // through different tables
+    const expandedTables = new Map();
+    const expandTable = (name, index) => {
+        const key = `${name}#${index}`;
+        if (expandedTables.has(key)) {
+            return expandedTables.get(key);
+        }
+        const table = json.classes[name][index];
+        let expanded;
+        if (Array.isArray(table)) {
+            expanded = table.map(id => strings[id]);
+        }
+        else {
+            // copy since the base's table is shared
+            expanded = [...expandTable(table.base, table.table)];
+            for (const [slot, id] of table.set) {
+                expanded[slot] = strings[id];
+            }
+            expanded.push(...table.add.map(id => strings[id]));
+        }
+        expandedTables.set(key, expanded);
+        return expanded;
+    };
+    const result = {};
+    for (const name in json.classes) {
+        Object.defineProperty(result, name, {
+            enumerable: true,
+            configurable: true,
+            get() {
+                const value = json.classes[name].map((_, i) => [...expandTable(name, i)]);
+                Object.defineProperty(result, name, { value, enumerable: true, configurable: true, writable: true });
+                return value;
+            },
+            set(value) {
+                Object.defineProperty(result, name, { value, enumerable: true, configurable: true, writable: true });
+            },
+        });
+    }
+    return result;
+}
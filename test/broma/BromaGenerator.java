@@ -0,0 +1,275 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Generates synthetic Broma files that look like the real ones: link
+// attributes, base classes, docs, commented out bindings, platform addresses,
+// inlined definitions, pads, and templates nested a few levels deep. The
+// output is the same for the same seed
+//
+// Usage: java BromaGenerator <output dir> <size in bytes> [seed]
+public class BromaGenerator {
+    static final String[] WORDS = {
+        "Game", "Level", "Edit", "Object", "Player", "Account", "Song", "Music", "Color", "Select",
+        "Layer", "Scroll", "Cell", "Popup", "Button", "Menu", "Sprite", "Effect", "Trigger", "Group",
+        "Comment", "Reward", "Chest", "Shop", "Stats", "Search", "List", "Info", "Toggle", "Slider",
+        "Particle", "Audio", "Camera", "Gradient", "Area", "Path", "Keyframe", "Animate", "Gauntlet", "Map",
+    };
+    static final String[] SUFFIXES = { "Layer", "Delegate", "Manager", "Cell", "Popup", "Object", "Node", "Protocol", "" };
+    static final String[] BUILTINS = {
+        "int", "float", "bool", "double", "unsigned int", "char const*", "short", "long long", "unsigned char", "void*",
+    };
+    static final String[] COCOS_TYPES = {
+        "cocos2d::CCObject", "cocos2d::CCNode", "cocos2d::CCArray", "cocos2d::CCDictionary", "cocos2d::CCSprite",
+        "cocos2d::CCMenu", "cocos2d::CCTouch", "cocos2d::CCEvent", "cocos2d::CCLayer", "cocos2d::CCScene",
+    };
+    static final String[] VALUE_TYPES = {
+        "cocos2d::CCPoint", "cocos2d::CCSize", "cocos2d::CCRect", "cocos2d::ccColor3B", "gd::string",
+    };
+    static final String[] TEMPLATES_1 = { "gd::vector", "gd::set", "std::array" };
+    static final String[] TEMPLATES_2 = { "gd::map", "gd::unordered_map", "gd::pair" };
+
+    final Random random;
+    final boolean cocos;
+    final List<String> classNames = new ArrayList<>();
+    final Set<String> usedNames = new HashSet<>();
+    int nextAddress = 0x10000;
+
+    BromaGenerator(long seed, boolean cocos) {
+        this.random = new Random(seed);
+        this.cocos = cocos;
+    }
+
+    // Generates at least `size` bytes of classes
+    String generate(int size) {
+        var out = new StringBuilder(size + 4096);
+        out.append("// clang-format off\n\n");
+        while (out.length() < size) {
+            writeClass(out);
+        }
+        return out.toString();
+    }
+
+    void writeClass(StringBuilder out) {
+        var name = className();
+        if (!cocos) {
+            var attr = random.nextInt(100);
+            if (attr < 85) {
+                out.append("[[link(android)]]\n");
+            }
+            else if (attr < 88 && !classNames.isEmpty()) {
+                out.append("[[link(android), depends(").append(pick(classNames)).append(")]]\n");
+            }
+        }
+        else {
+            out.append("[[link(win, android)]]\n");
+        }
+        out.append("class ").append(name);
+        var bases = random.nextInt(100) < 70 ? 1 + random.nextInt(4) : 0;
+        for (var i = 0; i < bases; i += 1) {
+            out.append(i == 0 ? " : " : ", ");
+            out.append(random.nextBoolean() || classNames.isEmpty() ? pick(COCOS_TYPES) : pick(classNames));
+        }
+        out.append(" {\n");
+
+        var simpleName = name.substring(name.lastIndexOf(':') + 1);
+        if (random.nextBoolean()) {
+            out.append("\t// virtual ~").append(simpleName).append("();\n");
+        }
+        else {
+            out.append("\tvirtual ~").append(simpleName).append("()").append(address()).append(";\n");
+        }
+        out.append("\n\tstatic ").append(name).append("* create(").append(params()).append(")").append(address()).append(";\n\n");
+
+        var functions = 3 + random.nextInt(40);
+        for (var i = 0; i < functions; i += 1) {
+            writeFunction(out, false);
+        }
+        var virtuals = random.nextInt(12);
+        if (virtuals > 0) {
+            out.append("\n");
+        }
+        for (var i = 0; i < virtuals; i += 1) {
+            writeFunction(out, true);
+        }
+
+        var fields = random.nextInt(8);
+        if (fields > 0) {
+            out.append("\n");
+        }
+        for (var i = 0; i < fields; i += 1) {
+            writeField(out);
+        }
+        out.append("}\n\n");
+        classNames.add(name);
+    }
+
+    void writeFunction(StringBuilder out, boolean isVirtual) {
+        var kind = random.nextInt(100);
+        if (kind < 4) {
+            out.append("\t/// ").append(word()).append("s the ").append(word().toLowerCase()).append("\n");
+            out.append("\t/// @param ").append(word().toLowerCase()).append(" The thing to use\n");
+        }
+        else if (kind < 8) {
+            out.append("\t// ").append(word()).append(" ").append(word().toLowerCase()).append(" isn't known yet\n");
+        }
+        else if (kind < 10) {
+            out.append("\t/* ").append(word()).append(" */\n");
+        }
+        var name = functionName();
+        var ret = random.nextInt(100) < 40 ? "TodoReturn" : random.nextBoolean() ? "void" : type(2);
+        out.append("\t");
+        if (!isVirtual && kind > 95) {
+            // Inlined definition
+            out.append("inline bool ").append(name).append("(").append(params()).append(") {\n")
+                .append("\t\tif (m_").append(word().toLowerCase()).append(") {\n")
+                .append("\t\t\treturn true;\n")
+                .append("\t\t}\n")
+                .append("\t\treturn false;\n")
+                .append("\t}\n");
+            return;
+        }
+        if (random.nextInt(100) < 5) {
+            out.append("// ");
+        }
+        if (isVirtual) {
+            out.append("virtual ");
+        }
+        else if (kind > 85) {
+            out.append("static ");
+        }
+        else if (kind > 83) {
+            out.append("callback ");
+        }
+        out.append(ret).append(" ").append(name).append("(").append(params()).append(")");
+        if (random.nextInt(100) < 5) {
+            out.append(" const");
+        }
+        out.append(address()).append(";\n");
+    }
+
+    void writeField(StringBuilder out) {
+        var kind = random.nextInt(100);
+        if (kind < 15) {
+            out.append("\tPAD = win 0x").append(Integer.toHexString(4 * (1 + random.nextInt(16))))
+                .append(", android32 0x").append(Integer.toHexString(4 * (1 + random.nextInt(16))))
+                .append(", android64 0x").append(Integer.toHexString(8 * (1 + random.nextInt(16)))).append(";\n");
+        }
+        else if (kind < 20) {
+            out.append("\tstd::array<").append(pick(BUILTINS)).append(", ").append(1 + random.nextInt(2000))
+                .append("> m_").append(memberName()).append(";\n");
+        }
+        else {
+            out.append("\t").append(type(3)).append(" m_").append(memberName()).append(";\n");
+        }
+    }
+
+    // Most functions aren't RE'd on Windows yet, so most don't have an address
+    String address() {
+        var kind = random.nextInt(100);
+        if (kind < 60) {
+            return "";
+        }
+        nextAddress += 16 * (1 + random.nextInt(64));
+        var address = Integer.toHexString(nextAddress);
+        if (kind < 90) {
+            return " = win 0x" + address;
+        }
+        return " = win 0x" + address + ", mac 0x" + Integer.toHexString(nextAddress * 3 / 2);
+    }
+
+    String params() {
+        var count = random.nextInt(100) < 30 ? 0 : 1 + random.nextInt(random.nextInt(100) < 10 ? 8 : 3);
+        var result = new StringBuilder();
+        for (var i = 0; i < count; i += 1) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(type(2));
+            if (random.nextInt(100) < 20) {
+                result.append(" ").append(memberName());
+            }
+        }
+        return result.toString();
+    }
+
+    // A parameter or field type, with templates nested up to `depth` levels
+    String type(int depth) {
+        var kind = random.nextInt(100);
+        if (kind < 35) {
+            return pick(BUILTINS);
+        }
+        if (kind < 60) {
+            return (classNames.isEmpty() || random.nextBoolean() ? pick(COCOS_TYPES) : pick(classNames)) + "*";
+        }
+        if (kind < 80 || depth == 0) {
+            var type = pick(VALUE_TYPES);
+            return random.nextBoolean() ? type + " const&" : type;
+        }
+        String template;
+        if (kind < 90) {
+            var base = pick(TEMPLATES_1);
+            template = base.equals("std::array")
+                ? base + "<" + pick(BUILTINS) + ", " + (1 + random.nextInt(64)) + ">"
+                : base + "<" + type(depth - 1) + ">";
+        }
+        else {
+            template = pick(TEMPLATES_2) + "<" + type(depth - 1) + ", " + type(depth - 1) + ">";
+        }
+        // Old bindings put a space between closing brackets
+        if (template.endsWith(">>") && random.nextBoolean()) {
+            template = template.substring(0, template.length() - 1) + " >";
+        }
+        return random.nextBoolean() ? template + "&" : template;
+    }
+
+    String className() {
+        var name = (cocos ? "cocos2d::CC" : "") + word() + word() + pick(SUFFIXES);
+        if (!usedNames.add(name)) {
+            name += classNames.size();
+            usedNames.add(name);
+        }
+        return name;
+    }
+
+    String functionName() {
+        var prefix = new String[] { "on", "get", "set", "update", "create", "is", "load", "" }[random.nextInt(8)];
+        var name = prefix + word() + (random.nextBoolean() ? word() : "");
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    String memberName() {
+        var name = word() + (random.nextBoolean() ? word() : "");
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    String word() {
+        return pick(WORDS);
+    }
+
+    <T> T pick(T[] options) {
+        return options[random.nextInt(options.length)];
+    }
+
+    <T> T pick(List<T> options) {
+        return options.get(random.nextInt(options.size()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java BromaGenerator <output dir> <size in bytes> [seed]");
+            System.exit(1);
+        }
+        var dir = new File(args[0]);
+        var size = Integer.parseInt(args[1]);
+        var seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        dir.mkdirs();
+        // The real Cocos2d.bro is about 6% of the total
+        Files.writeString(new File(dir, "Cocos2d.bro").toPath(), new BromaGenerator(seed, true).generate(size / 16));
+        Files.writeString(new File(dir, "GeometryDash.bro").toPath(), new BromaGenerator(seed, false).generate(size - size / 16));
+    }
+}
@@ -0,0 +1,70 @@
+import broma.ItaniumMangler;
+import broma.Param;
+import broma.TypeParser;
+
+import java.util.List;
+
+// Checks ItaniumMangler against names produced by g++ with the old string ABI
+// (-D_GLIBCXX_USE_CXX11_ABI=0), which is what GD is built with on Android
+//
+// Usage: java ItaniumManglerTest
+public class ItaniumManglerTest {
+    record Case(String cls, String name, String params, boolean isConst, String expected) {}
+
+    static final List<Case> CASES = List.of(
+        new Case("cocos2d::CCNode", "setTag", "int", false,
+            "_ZN7cocos2d6CCNode6setTagEi"),
+        new Case("cocos2d::CCNode", "runAction", "cocos2d::CCAction*", false,
+            "_ZN7cocos2d6CCNode9runActionEPNS_8CCActionE"),
+        new Case("GameManager", "foo", "gd::vector<int>", false,
+            "_ZN11GameManager3fooESt6vectorIiSaIiEE"),
+        new Case("GameManager", "baz", "char const*, cocos2d::CCNode*, cocos2d::CCNode*", true,
+            "_ZNK11GameManager3bazEPKcPN7cocos2d6CCNodeES4_"),
+        new Case("X", "m", "gd::map<gd::string, int>", false,
+            "_ZN1X1mESt3mapISsiSt4lessISsESaISt4pairIKSsiEEE"),
+        new Case("X", "c", "cocos2d::ccColor3B const&", false,
+            "_ZN1X1cERKN7cocos2d10_ccColor3BE"),
+        new Case("X", "~X", "", false,
+            "_ZN1XD2Ev"),
+        // Selectors, where CCObject has to be mangled before the function type
+        new Case("Slider", "create", "cocos2d::CCNode*, cocos2d::SEL_MenuHandler, char const*, char const*, float", false,
+            "_ZN6Slider6createEPN7cocos2d6CCNodeEMNS0_8CCObjectEFvPS3_EPKcS8_f"),
+        new Case("Slider", "create", "cocos2d::CCNode*, cocos2d::SEL_MenuHandler, char const*, char const*, char const*, char const*, float", false,
+            "_ZN6Slider6createEPN7cocos2d6CCNodeEMNS0_8CCObjectEFvPS3_EPKcS8_S8_S8_f"),
+        new Case("GameToolbox", "createToggleButton", "gd::string, cocos2d::SEL_MenuHandler, bool, cocos2d::CCMenu*, cocos2d::CCPoint, cocos2d::CCNode*, cocos2d::CCNode*, cocos2d::CCArray*", false,
+            "_ZN11GameToolbox18createToggleButtonESsMN7cocos2d8CCObjectEFvPS1_EbPNS0_6CCMenuENS0_7CCPointEPNS0_6CCNodeES9_PNS0_7CCArrayE"),
+        new Case("X", "a", "cocos2d::SEL_SCHEDULE, cocos2d::CCObject*", false,
+            "_ZN1X1aEMN7cocos2d8CCObjectEFvfEPS1_"),
+        new Case("X", "b", "cocos2d::CCObject*, cocos2d::SEL_CallFuncN, cocos2d::CCNode*", false,
+            "_ZN1X1bEPN7cocos2d8CCObjectEMS1_FvPNS0_6CCNodeEES4_"),
+        // Another instantiation of a template reuses the template's name
+        new Case("StartPosObject", "customObjectSetup", "gd::vector<gd::string>&, gd::vector<void*>&", false,
+            "_ZN14StartPosObject17customObjectSetupERSt6vectorISsSaISsEERS0_IPvSaIS4_EE"),
+        new Case("X", "m", "gd::map<int, int>, gd::map<int, bool>", false,
+            "_ZN1X1mESt3mapIiiSt4lessIiESaISt4pairIKiiEEES0_IibS2_SaIS3_IS4_bEEE"),
+        // std::array's size is a size_t, which is unsigned int on 32-bit
+        new Case("X", "a", "std::array<int, 5>, std::array<float, 3>", false,
+            "_ZN1X1aESt5arrayIiLj5EES0_IfLj3EE")
+    );
+
+    public static void main(String[] args) {
+        var parser = new TypeParser();
+        var mangler = new ItaniumMangler(false);
+        var failed = 0;
+        for (var c : CASES) {
+            var params = parser.parseParams(c.params()).stream().map(Param::type).toList();
+            var names = mangler.mangleFunction(c.cls(), c.name(), params, c.isConst());
+            if (names.contains(c.expected())) {
+                continue;
+            }
+            System.out.println("FAIL: " + c.cls() + "::" + c.name() + "(" + c.params() + ")");
+            System.out.println("    expected " + c.expected());
+            System.out.println("    got      " + names);
+            failed += 1;
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+        System.out.println("All " + CASES.size() + " names match");
+    }
+}
@@ -0,0 +1,139 @@
+import broma.Regexes;
+import broma.TypeParser;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.List;
+
+// Checks that parsing Broma the way SyncBromaScript does scales linearly, by
+// parsing synthetic bindings at 1x, 10x and 100x the size of the real ones.
+// Fails if the time or memory allocated per byte grows with the size, which is
+// what catastrophic backtracking in one of the regexes would look like
+//
+// Usage: java ParserScalingTest [bindings version dir]
+public class ParserScalingTest {
+    static final int[] SCALES = { 1, 10, 100 };
+    // How many times more per byte a bigger corpus may cost before it counts
+    // as not linear. Time is generous since CI machines are noisy
+    static final double TIME_TOLERANCE = 3.0;
+    static final double ALLOCATION_TOLERANCE = 1.5;
+
+    record Result(int functions, int params) {}
+    record Measurement(int scale, long bytes, long nanos, long allocated, Result result) {
+        double nanosPerByte() {
+            return (double)nanos / bytes;
+        }
+        double allocatedPerByte() {
+            return (double)allocated / bytes;
+        }
+    }
+
+    // Does what SyncBromaScript's sync loop does, minus the Ghidra parts
+    static Result parse(List<String> files) {
+        var typeParser = new TypeParser();
+        var functions = 0;
+        var params = 0;
+        for (var text : files) {
+            var cls = Regexes.GRAB_CLASSES.matcher(text);
+            while (cls.find()) {
+                var attrs = cls.group("attrs");
+                if (attrs != null) {
+                    Regexes.GRAB_LINK_ATTR.matcher(attrs).find();
+                }
+                var body = cls.group("body");
+                var fun = Regexes.GRAB_FUNCTION.matcher(body);
+                while (fun.find()) {
+                    if (Regexes.isCommentedOut(body, fun.start())) {
+                        continue;
+                    }
+                    functions += 1;
+                    var platforms = fun.group("platforms");
+                    if (platforms != null) {
+                        Regexes.GRAB_WIN_ADDRESS.matcher(platforms).find();
+                    }
+                    if (fun.group("return") != null) {
+                        typeParser.parse(fun.group("return"));
+                    }
+                    params += typeParser.parseParams(fun.group("params")).size();
+                }
+            }
+        }
+        return new Result(functions, params);
+    }
+
+    static Measurement measure(int scale, List<String> files, int runs) {
+        var threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        var bytes = files.stream().mapToLong(String::length).sum();
+        var nanos = Long.MAX_VALUE;
+        var allocated = Long.MAX_VALUE;
+        Result result = null;
+        // Take the best run, since anything slower is noise
+        for (var i = 0; i < runs; i += 1) {
+            System.gc();
+            var allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            var start = System.nanoTime();
+            result = parse(files);
+            nanos = Math.min(nanos, System.nanoTime() - start);
+            allocated = Math.min(allocated, threads.getCurrentThreadAllocatedBytes() - allocatedBefore);
+        }
+        return new Measurement(scale, bytes, nanos, allocated, result);
+    }
+
+    static List<String> generate(int cocosSize, int gdSize) {
+        return List.of(
+            new BromaGenerator(0, true).generate(cocosSize),
+            new BromaGenerator(0, false).generate(gdSize)
+        );
+    }
+
+    static void print(String name, Measurement m) {
+        System.out.println(String.format(
+            "%-10s %8.1f MB %9.1f ms %7.1f ns/B %7.1f alloc B/B %9d functions %9d params",
+            name, m.bytes() / 1e6, m.nanos() / 1e6, m.nanosPerByte(), m.allocatedPerByte(),
+            m.result().functions(), m.result().params()
+        ));
+    }
+
+    public static void main(String[] args) throws Exception {
+        var dir = new File(args.length > 0 ? args[0] : "bindings/2.202");
+        var cocos = Files.readString(new File(dir, "Cocos2d.bro").toPath());
+        var gd = Files.readString(new File(dir, "GeometryDash.bro").toPath());
+
+        // Make sure the real bindings parse too, and warm up the JIT so it
+        // doesn't make the smallest corpus look slower than it is
+        var real = List.of(cocos, gd);
+        for (var i = 0; i < 5; i += 1) {
+            parse(real);
+        }
+        print("real", measure(1, real, 5));
+
+        Measurement base = null;
+        var failed = false;
+        for (var scale : SCALES) {
+            var files = generate(cocos.length() * scale, gd.length() * scale);
+            var m = measure(scale, files, scale == 1 ? 10 : 3);
+            print(scale + "x", m);
+            if (base == null) {
+                base = m;
+                continue;
+            }
+            if (m.nanosPerByte() > base.nanosPerByte() * TIME_TOLERANCE) {
+                System.out.println(String.format(
+                    "FAIL: %dx takes %.1fx as long per byte as 1x", scale, m.nanosPerByte() / base.nanosPerByte()
+                ));
+                failed = true;
+            }
+            if (m.allocatedPerByte() > base.allocatedPerByte() * ALLOCATION_TOLERANCE) {
+                System.out.println(String.format(
+                    "FAIL: %dx allocates %.1fx as much per byte as 1x", scale, m.allocatedPerByte() / base.allocatedPerByte()
+                ));
+                failed = true;
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+        System.out.println("Parsing scales linearly");
+    }
+}